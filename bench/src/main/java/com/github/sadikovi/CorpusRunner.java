@@ -0,0 +1,254 @@
+package com.github.sadikovi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs programs of the benchmark corpus (`bench/corpus/*.lox`) and reports median and p95 wall
+ * times of every program.
+ *
+ * jlox runs in-process with a fresh interpreter per iteration, timings include scanning, parsing
+ * and resolving. clox runs as a separate process per iteration when `--clox` is set, the output of
+ * both implementations must match. Timings are compared against a baseline file written with
+ * `--save-baseline`, the runner exits with 1 if a median is slower than the baseline by more than
+ * the threshold.
+ *
+ * Usage: CorpusRunner [--iterations N] [--warmup N] [--threshold PERCENT] [--baseline FILE]
+ *   [--save-baseline FILE] [--clox PATH] [corpus directory]
+ */
+public class CorpusRunner {
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /** Sorted times of a program in milliseconds and its output */
+  static class Result {
+    final double[] times;
+    final String output;
+
+    Result(double[] times, String output) {
+      this.times = times;
+      this.output = output;
+      Arrays.sort(this.times);
+    }
+
+    double median() {
+      return percentile(50);
+    }
+
+    double p95() {
+      return percentile(95);
+    }
+
+    /** Returns nearest-rank percentile */
+    double percentile(int p) {
+      int rank = (int) Math.ceil(p / 100.0 * times.length);
+      return times[Math.max(rank, 1) - 1];
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int iterations = 10;
+    int warmup = 3;
+    double threshold = 10;
+    String baselinePath = null;
+    String savePath = null;
+    String clox = null;
+    String corpus = "bench/corpus";
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if (arg.equals("--iterations") && i + 1 < args.length) {
+        iterations = Integer.parseInt(args[++i]);
+      } else if (arg.equals("--warmup") && i + 1 < args.length) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if (arg.equals("--threshold") && i + 1 < args.length) {
+        threshold = Double.parseDouble(args[++i]);
+      } else if (arg.equals("--baseline") && i + 1 < args.length) {
+        baselinePath = args[++i];
+      } else if (arg.equals("--save-baseline") && i + 1 < args.length) {
+        savePath = args[++i];
+      } else if (arg.equals("--clox") && i + 1 < args.length) {
+        clox = args[++i];
+      } else if (!arg.startsWith("--")) {
+        corpus = arg;
+      } else {
+        System.err.println("Usage: CorpusRunner [--iterations N] [--warmup N] " +
+          "[--threshold PERCENT] [--baseline FILE] [--save-baseline FILE] [--clox PATH] [corpus]");
+        System.exit(64);
+      }
+    }
+    if (iterations < 1) throw new IllegalArgumentException("Expected at least one iteration");
+
+    File[] files = new File(corpus).listFiles();
+    if (files == null) throw new IOException("Corpus directory " + corpus + " does not exist");
+    Arrays.sort(files);
+
+    Map<String, double[]> baseline = (baselinePath == null) ? null : readBaseline(baselinePath);
+    Map<String, Result> results = new LinkedHashMap<String, Result>();
+    List<String> failures = new ArrayList<String>();
+
+    System.out.println(header(clox != null, baseline != null));
+    for (File file : files) {
+      if (!file.getName().endsWith(".lox")) continue;
+      String name = file.getName().substring(0, file.getName().length() - 4);
+      String source = new String(Files.readAllBytes(file.toPath()), UTF8);
+
+      Result jlox;
+      try {
+        jlox = runJlox(source, warmup, iterations);
+      } catch (IllegalStateException err) {
+        throw new IllegalStateException(file + ": " + err.getMessage(), err);
+      }
+      results.put(name, jlox);
+      StringBuilder row = new StringBuilder();
+      row.append(String.format(Locale.ROOT, "%-20s %10.2f %10.2f",
+        name, jlox.median(), jlox.p95()));
+
+      if (clox != null) {
+        Result c = runClox(clox, file, warmup, iterations);
+        row.append(String.format(Locale.ROOT, " %10.2f %10.2f %8.1fx",
+          c.median(), c.p95(), jlox.median() / c.median()));
+        if (!c.output.equals(jlox.output)) {
+          failures.add(name + ": jlox and clox outputs differ");
+        }
+      }
+
+      if (baseline != null) {
+        double[] base = baseline.get(name);
+        if (base == null) {
+          row.append(String.format(Locale.ROOT, " %10s %8s", "-", "-"));
+        } else {
+          double change = (jlox.median() - base[0]) * 100 / base[0];
+          row.append(String.format(Locale.ROOT, " %10.2f %+7.1f%%", base[0], change));
+          if (change > threshold) {
+            failures.add(String.format(Locale.ROOT,
+              "%s: median %.2f ms is %.1f%% slower than baseline %.2f ms (threshold %.1f%%)",
+              name, jlox.median(), change, base[0], threshold));
+          }
+        }
+      }
+      System.out.println(row);
+    }
+
+    if (savePath != null) {
+      writeBaseline(savePath, results);
+      System.out.println("Baseline is written into " + savePath);
+    }
+
+    for (String failure : failures) {
+      System.err.println(failure);
+    }
+    if (!failures.isEmpty()) System.exit(1);
+  }
+
+  private static String header(boolean clox, boolean baseline) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format(Locale.ROOT, "%-20s %10s %10s", "program", "jlox p50", "jlox p95"));
+    if (clox) {
+      sb.append(String.format(Locale.ROOT, " %10s %10s %9s", "clox p50", "clox p95", "ratio"));
+    }
+    if (baseline) {
+      sb.append(String.format(Locale.ROOT, " %10s %9s", "base p50", "change"));
+    }
+    sb.append("\n(times in ms)");
+    return sb.toString();
+  }
+
+  /** Runs program in-process, the first `warmup` runs are not measured */
+  static Result runJlox(String source, int warmup, int iterations) {
+    double[] times = new double[iterations];
+    String output = null;
+    for (int i = 0; i < warmup + iterations; i++) {
+      long start = System.nanoTime();
+      output = interpret(source);
+      long end = System.nanoTime();
+      if (i >= warmup) times[i - warmup] = (end - start) / 1e6;
+    }
+    return new Result(times, output);
+  }
+
+  /**
+   * Scans, parses, resolves and evaluates the program, returns its output.
+   * Fails if the program reports syntax, resolution or runtime errors, so a broken program is
+   * neither timed nor saved into the baseline.
+   */
+  private static String interpret(String source) {
+    StringWriter out = new StringWriter();
+    Interpreter interpreter = new Interpreter();
+    interpreter.setOutput(OutputSink.of(out));
+    List<String> errors;
+    Lox.deferErrors();
+    try {
+      List<Stmt> statements = new Parser(new Scanner(source).stream()).parse();
+      if (Lox.deferredCount() == 0) new Resolver(interpreter).resolve(statements);
+      if (Lox.deferredCount() == 0) interpreter.interpret(statements, false);
+    } finally {
+      errors = Lox.collectErrors();
+    }
+    if (!errors.isEmpty()) {
+      throw new IllegalStateException("Program has errors:\n" + String.join("\n", errors));
+    }
+    return out.toString();
+  }
+
+  /** Runs program with clox binary in a separate process per iteration */
+  static Result runClox(String clox, File file, int warmup, int iterations) throws Exception {
+    double[] times = new double[iterations];
+    String output = null;
+    for (int i = 0; i < warmup + iterations; i++) {
+      long start = System.nanoTime();
+      Process process = new ProcessBuilder(clox, file.getPath())
+        .redirectError(ProcessBuilder.Redirect.INHERIT)
+        .start();
+      output = readFully(process.getInputStream());
+      int code = process.waitFor();
+      long end = System.nanoTime();
+      if (code != 0) throw new IllegalStateException(clox + " exited with " + code + " on " + file);
+      if (i >= warmup) times[i - warmup] = (end - start) / 1e6;
+    }
+    return new Result(times, output);
+  }
+
+  private static String readFully(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int n;
+    while ((n = in.read(buffer)) != -1) {
+      out.write(buffer, 0, n);
+    }
+    return new String(out.toByteArray(), UTF8);
+  }
+
+  /** Reads baseline, every line is "name median p95", lines starting with '#' are ignored */
+  static Map<String, double[]> readBaseline(String path) throws IOException {
+    Map<String, double[]> baseline = new LinkedHashMap<String, double[]>();
+    for (String line : Files.readAllLines(Paths.get(path), UTF8)) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) continue;
+      String[] parts = line.split("\\s+");
+      if (parts.length != 3) throw new IOException("Invalid baseline line: " + line);
+      baseline.put(parts[0],
+        new double[] { Double.parseDouble(parts[1]), Double.parseDouble(parts[2]) });
+    }
+    return baseline;
+  }
+
+  static void writeBaseline(String path, Map<String, Result> results) throws IOException {
+    StringBuilder sb = new StringBuilder("# program median_ms p95_ms\n");
+    for (Map.Entry<String, Result> entry : results.entrySet()) {
+      sb.append(String.format(Locale.ROOT, "%s %.3f %.3f%n",
+        entry.getKey(), entry.getValue().median(), entry.getValue().p95()));
+    }
+    Files.write(Paths.get(path), sb.toString().getBytes(UTF8));
+  }
+}
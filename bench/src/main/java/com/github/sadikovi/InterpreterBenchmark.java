@@ -0,0 +1,123 @@
+package com.github.sadikovi;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end evaluation of small programs that stress calls, method dispatch, allocation, string
+ * concatenation and closures. Programs are parsed and resolved once, every operation evaluates the
+ * program with the same interpreter. Run with `-prof gc` to see allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InterpreterBenchmark {
+  static final Map<String, String> PROGRAMS = new HashMap<String, String>();
+
+  static {
+    PROGRAMS.put("fib",
+      "fun fib(n) {\n" +
+      "  if (n < 2) return n;\n" +
+      "  return fib(n - 2) + fib(n - 1);\n" +
+      "}\n" +
+      "var result = fib(20);\n");
+
+    PROGRAMS.put("zoo",
+      "class Zoo {\n" +
+      "  init() {\n" +
+      "    this.aarvark  = 1;\n" +
+      "    this.baboon   = 1;\n" +
+      "    this.cat      = 1;\n" +
+      "    this.donkey   = 1;\n" +
+      "    this.elephant = 1;\n" +
+      "    this.fox      = 1;\n" +
+      "  }\n" +
+      "  ant()    { return this.aarvark; }\n" +
+      "  banana() { return this.baboon; }\n" +
+      "  tuna()   { return this.cat; }\n" +
+      "  hay()    { return this.donkey; }\n" +
+      "  grass()  { return this.elephant; }\n" +
+      "  mouse()  { return this.fox; }\n" +
+      "}\n" +
+      "var zoo = Zoo();\n" +
+      "var sum = 0;\n" +
+      "while (sum < 60000) {\n" +
+      "  sum = sum + zoo.ant() + zoo.banana() + zoo.tuna()\n" +
+      "            + zoo.hay() + zoo.grass() + zoo.mouse();\n" +
+      "}\n");
+
+    PROGRAMS.put("instantiation",
+      "class Point {\n" +
+      "  init(x, y) {\n" +
+      "    this.x = x;\n" +
+      "    this.y = y;\n" +
+      "  }\n" +
+      "}\n" +
+      "var i = 0;\n" +
+      "while (i < 10000) {\n" +
+      "  Point(i, i);\n" +
+      "  i = i + 1;\n" +
+      "}\n");
+
+    PROGRAMS.put("concatenation",
+      "var s = \"\";\n" +
+      "var i = 0;\n" +
+      "while (i < 10000) {\n" +
+      "  s = \"key\" + i + \"value\";\n" +
+      "  i = i + 1;\n" +
+      "}\n");
+
+    PROGRAMS.put("closure",
+      "fun counter(start) {\n" +
+      "  var count = start;\n" +
+      "  fun next() {\n" +
+      "    count = count + 1;\n" +
+      "    return count;\n" +
+      "  }\n" +
+      "  return next;\n" +
+      "}\n" +
+      "var i = 0;\n" +
+      "while (i < 10000) {\n" +
+      "  counter(i)();\n" +
+      "  i = i + 1;\n" +
+      "}\n");
+  }
+
+  @Param({ "fib", "zoo", "instantiation", "concatenation", "closure" })
+  public String program;
+
+  private Interpreter interpreter;
+  private List<Stmt> statements;
+
+  @Setup
+  public void setup() {
+    int errors = Lox.errorCount();
+    interpreter = new Interpreter();
+    statements = new Parser(new Scanner(PROGRAMS.get(program)).stream()).parse();
+    new Resolver(interpreter).resolve(statements);
+    if (Lox.errorCount() != errors) throw new IllegalStateException("Program has errors");
+  }
+
+  @Benchmark
+  public Interpreter interpret() {
+    interpreter.interpret(statements, false);
+    return interpreter;
+  }
+}
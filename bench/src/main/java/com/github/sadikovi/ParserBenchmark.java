@@ -0,0 +1,57 @@
+package com.github.sadikovi;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parser and resolver throughput on pre-scanned tokens.
+ * Every operation processes 1 MiB of source, see ScannerBenchmark, so ops/s is the throughput in
+ * MiB/s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+  private TokenBuffer tokens;
+  private List<Stmt> statements;
+
+  @Setup
+  public void setup() {
+    int errors = Lox.errorCount();
+    tokens = new Scanner(ScannerBenchmark.source(ScannerBenchmark.SOURCE_SIZE)).scanTokens();
+    statements = new Parser(tokens, false).parse();
+    new Resolver(new Interpreter()).resolve(statements);
+    if (Lox.errorCount() != errors) throw new IllegalStateException("Source has errors");
+  }
+
+  @Benchmark
+  public List<Stmt> parse() {
+    return new Parser(tokens, false).parse();
+  }
+
+  @Benchmark
+  public List<Stmt> parseLazy() {
+    return new Parser(tokens, true).parse();
+  }
+
+  @Benchmark
+  public Interpreter resolve() {
+    Interpreter interpreter = new Interpreter();
+    new Resolver(interpreter).resolve(statements);
+    return interpreter;
+  }
+}
@@ -0,0 +1,87 @@
+package com.github.sadikovi;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scanner throughput.
+ * Every operation scans exactly 1 MiB of source, so ops/s is the throughput in MiB/s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScannerBenchmark {
+  static final int SOURCE_SIZE = 1 << 20;
+
+  private static final String SNIPPET =
+    "class Zoo < Animals {\n" +
+    "  init(name) {\n" +
+    "    this.name = name; // name of the zoo\n" +
+    "    this.count = 0;\n" +
+    "  }\n" +
+    "  /* returns total number of animals */\n" +
+    "  total() { return this.count + super.total(); }\n" +
+    "}\n" +
+    "fun fib(n) {\n" +
+    "  if (n < 2) return n;\n" +
+    "  return fib(n - 2) + fib(n - 1);\n" +
+    "}\n" +
+    "var zoo = Zoo(\"city zoo\");\n" +
+    "for (var i = 0; i <= 100; i = i + 1) {\n" +
+    "  while (true and !false or nil) { print fib(i) * 3.14 / 2; break; }\n" +
+    "}\n";
+
+  private String source;
+
+  /** Returns source of exactly `size` characters made of repeated snippet and whitespace */
+  static String source(int size) {
+    StringBuilder sb = new StringBuilder(size);
+    while (sb.length() + SNIPPET.length() <= size) {
+      sb.append(SNIPPET);
+    }
+    while (sb.length() < size) {
+      sb.append(' ');
+    }
+    return sb.toString();
+  }
+
+  @Setup
+  public void setup() {
+    source = source(SOURCE_SIZE);
+  }
+
+  @Benchmark
+  public int getTokens() {
+    return new Scanner(source).getTokens().size();
+  }
+
+  @Benchmark
+  public int scanTokens() {
+    return new Scanner(source).scanTokens().size();
+  }
+
+  @Benchmark
+  public int streamTokens() {
+    TokenStream tokens = new Scanner(new StringReader(source)).stream();
+    int count = 0;
+    while (tokens.peekType() != TokenType.EOF) {
+      tokens.advance();
+      count++;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,75 @@
+package com.github.sadikovi;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Binary format of a compiled (scanned, parsed and resolved) Lox program.
+ *
+ * file         -> MAGIC VERSION strings lines nodes ;
+ * strings      -> varint(count) ( varint(length) utf8-bytes )* ;
+ * lines        -> varint(runs) ( varint(line) varint(count) )* ;
+ * nodes        -> varint(count) stmt* ;
+ * stmt, expr   -> tag fields* ;
+ * token        -> byte(type) varint(lexeme) ;
+ * list         -> varint(size + 1), 0 for null list ;
+ * depth        -> varint(depth + 1), 0 for global variable ;
+ *
+ * Lexemes and names are stored once in the string table and referenced by index. Token lines are
+ * not stored with tokens, they are run-length encoded in the order tokens appear in the node
+ * stream. See AstWriter and AstReader.
+ */
+final class AstFormat {
+  private AstFormat() { }
+
+  static final byte[] MAGIC = new byte[] { 'L', 'O', 'X', 'C' };
+  static final byte VERSION = 1;
+  static final Charset UTF8 = Charset.forName("UTF-8");
+
+  // Tag for null statement or expression
+  static final byte NULL = 0;
+
+  // Statement tags
+  static final byte STMT_BLOCK = 1;
+  static final byte STMT_BREAK = 2;
+  static final byte STMT_CLASS = 3;
+  static final byte STMT_EXPRESSION = 4;
+  static final byte STMT_FUNCTION = 5;
+  static final byte STMT_IF = 6;
+  static final byte STMT_PRINT = 7;
+  static final byte STMT_RETURN = 8;
+  static final byte STMT_WHILE = 9;
+  static final byte STMT_VAR = 10;
+
+  // Expression tags
+  static final byte EXPR_ASSIGN = 32;
+  static final byte EXPR_BINARY = 33;
+  static final byte EXPR_CALL = 34;
+  static final byte EXPR_GET = 35;
+  static final byte EXPR_GROUPING = 36;
+  static final byte EXPR_LAMBDA = 37;
+  static final byte EXPR_LITERAL = 38;
+  static final byte EXPR_LOGICAL = 39;
+  static final byte EXPR_SET = 40;
+  static final byte EXPR_SUPER = 41;
+  static final byte EXPR_THIS = 42;
+  static final byte EXPR_UNARY = 43;
+  static final byte EXPR_VARIABLE = 44;
+
+  // Literal value tags
+  static final byte LIT_NIL = 0;
+  static final byte LIT_TRUE = 1;
+  static final byte LIT_FALSE = 2;
+  static final byte LIT_INT = 3; // integral number stored as zigzag varint
+  static final byte LIT_NUMBER = 4; // 8 bytes of double
+  static final byte LIT_STRING = 5;
+
+  /** Returns true if buffer starts with the format magic */
+  static boolean hasMagic(ByteBuffer buffer) {
+    if (buffer.remaining() < MAGIC.length) return false;
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (buffer.get(buffer.position() + i) != MAGIC[i]) return false;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,315 @@
+package com.github.sadikovi;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.sadikovi.AstFormat.*;
+
+/**
+ * Deserializes statements written by AstWriter, see AstFormat.
+ * Buffer can be memory-mapped, statements are read in a single linear pass and resolution depths
+ * are registered with the interpreter. Truncated or malformed input is reported as FormatError.
+ */
+class AstReader {
+  public static class FormatError extends RuntimeException {
+    FormatError(String message) {
+      super(message);
+    }
+  }
+
+  private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+  private final ByteBuffer buffer;
+  private final Interpreter interpreter;
+  private String[] strings;
+  private int[] lines; // pairs of (line, count)
+  private int run; // current line run
+  private int remaining; // tokens left in the current line run
+
+  AstReader(ByteBuffer buffer, Interpreter interpreter) {
+    this.buffer = buffer;
+    this.interpreter = interpreter;
+  }
+
+  public List<Stmt> read() {
+    if (!hasMagic(buffer)) throw new FormatError("Not a compiled Lox file");
+    try {
+      buffer.position(buffer.position() + MAGIC.length);
+      byte version = buffer.get();
+      if (version != VERSION) throw new FormatError("Unsupported format version " + version);
+
+      readStrings();
+      readLines();
+
+      int count = readLength();
+      List<Stmt> statements = new ArrayList<Stmt>(count);
+      for (int i = 0; i < count; i++) {
+        statements.add(readStmt());
+      }
+      return statements;
+    } catch (BufferUnderflowException err) {
+      throw new FormatError("Truncated file");
+    }
+  }
+
+  private void readStrings() {
+    strings = new String[readLength()];
+    byte[] bytes = new byte[64];
+    for (int i = 0; i < strings.length; i++) {
+      int length = readLength();
+      if (bytes.length < length) bytes = new byte[length];
+      buffer.get(bytes, 0, length);
+      strings[i] = new String(bytes, 0, length, UTF8);
+    }
+  }
+
+  private void readLines() {
+    lines = new int[readLength() * 2];
+    for (int i = 0; i < lines.length; i++) {
+      lines[i] = readVarint();
+    }
+    run = -2;
+    remaining = 0;
+  }
+
+  private Stmt readStmt() {
+    byte tag = buffer.get();
+    switch (tag) {
+      case NULL:
+        return null;
+      case STMT_BLOCK:
+        return new Stmt.Block(readStmts());
+      case STMT_BREAK:
+        return new Stmt.Break();
+      case STMT_CLASS: {
+        Token name = readToken();
+        Expr superclass = readExpr();
+        if (superclass != null && !(superclass instanceof Expr.Variable)) {
+          throw new FormatError("Invalid superclass");
+        }
+        List<Stmt.Function> methods = readFunctions();
+        List<Stmt.Function> classMethods = readFunctions();
+        return new Stmt.Class(name, (Expr.Variable) superclass, methods, classMethods);
+      }
+      case STMT_EXPRESSION:
+        return new Stmt.Expression(readExpr());
+      case STMT_FUNCTION: {
+        Token name = readToken();
+        List<Token> params = readTokens();
+        return new Stmt.Function(name, params, readStmts());
+      }
+      case STMT_IF: {
+        Expr condition = readExpr();
+        Stmt thenBranch = readStmt();
+        return new Stmt.If(condition, thenBranch, readStmt());
+      }
+      case STMT_PRINT:
+        return new Stmt.Print(readExpr());
+      case STMT_RETURN: {
+        Token keyword = readToken();
+        return new Stmt.Return(keyword, readExpr());
+      }
+      case STMT_WHILE: {
+        Expr condition = readExpr();
+        return new Stmt.While(condition, readStmt());
+      }
+      case STMT_VAR: {
+        Token name = readToken();
+        return new Stmt.Var(name, readExpr());
+      }
+      default:
+        throw new FormatError("Invalid statement tag " + tag);
+    }
+  }
+
+  private Expr readExpr() {
+    byte tag = buffer.get();
+    switch (tag) {
+      case NULL:
+        return null;
+      case EXPR_ASSIGN: {
+        Token name = readToken();
+        return readDepth(new Expr.Assign(name, readExpr()));
+      }
+      case EXPR_BINARY: {
+        Expr left = readExpr();
+        Token operator = readToken();
+        return new Expr.Binary(left, operator, readExpr());
+      }
+      case EXPR_CALL: {
+        Expr callee = readExpr();
+        Token paren = readToken();
+        int count = readLength();
+        List<Expr> arguments = new ArrayList<Expr>(count);
+        for (int i = 0; i < count; i++) {
+          arguments.add(readExpr());
+        }
+        return new Expr.Call(callee, paren, arguments);
+      }
+      case EXPR_GET: {
+        Expr object = readExpr();
+        return new Expr.Get(object, readToken());
+      }
+      case EXPR_GROUPING:
+        return new Expr.Grouping(readExpr());
+      case EXPR_LAMBDA: {
+        Token keyword = readToken();
+        List<Token> params = readTokens();
+        return new Expr.Lambda(keyword, params, readStmts());
+      }
+      case EXPR_LITERAL:
+        return new Expr.Literal(readValue());
+      case EXPR_LOGICAL: {
+        Expr left = readExpr();
+        Token operator = readToken();
+        return new Expr.Logical(left, operator, readExpr());
+      }
+      case EXPR_SET: {
+        Expr object = readExpr();
+        Token name = readToken();
+        return new Expr.Set(object, name, readExpr());
+      }
+      case EXPR_SUPER: {
+        Token keyword = readToken();
+        Token method = readToken();
+        return readDepth(new Expr.Super(keyword, method));
+      }
+      case EXPR_THIS:
+        return readDepth(new Expr.This(readToken()));
+      case EXPR_UNARY: {
+        Token operator = readToken();
+        return new Expr.Unary(operator, readExpr());
+      }
+      case EXPR_VARIABLE:
+        return readDepth(new Expr.Variable(readToken()));
+      default:
+        throw new FormatError("Invalid expression tag " + tag);
+    }
+  }
+
+  private List<Stmt> readStmts() {
+    int size = readSize();
+    if (size < 0) return null;
+    List<Stmt> statements = new ArrayList<Stmt>(size);
+    for (int i = 0; i < size; i++) {
+      statements.add(readStmt());
+    }
+    return statements;
+  }
+
+  private List<Stmt.Function> readFunctions() {
+    int size = readSize();
+    if (size < 0) return null;
+    List<Stmt.Function> functions = new ArrayList<Stmt.Function>(size);
+    for (int i = 0; i < size; i++) {
+      Stmt function = readStmt();
+      if (!(function instanceof Stmt.Function)) throw new FormatError("Invalid method");
+      functions.add((Stmt.Function) function);
+    }
+    return functions;
+  }
+
+  private List<Token> readTokens() {
+    int size = readSize();
+    if (size < 0) return null;
+    List<Token> tokens = new ArrayList<Token>(size);
+    for (int i = 0; i < size; i++) {
+      tokens.add(readToken());
+    }
+    return tokens;
+  }
+
+  private Token readToken() {
+    byte tag = buffer.get();
+    if (tag < 0 || tag >= TOKEN_TYPES.length) throw new FormatError("Invalid token type " + tag);
+    TokenType type = TOKEN_TYPES[tag];
+    String lexeme = readString();
+    Object literal = null;
+    try {
+      if (type == TokenType.NUMBER) {
+        literal = Double.parseDouble(lexeme);
+      } else if (type == TokenType.STRING) {
+        literal = lexeme.substring(1, lexeme.length() - 1);
+      }
+    } catch (RuntimeException err) {
+      throw new FormatError("Invalid literal " + lexeme);
+    }
+    return new Token(type, lexeme, literal, nextLine());
+  }
+
+  /** Returns line of the next token from run-length encoded lines */
+  private int nextLine() {
+    if (remaining == 0) {
+      run += 2;
+      if (run >= lines.length) throw new FormatError("Line table is exhausted");
+      remaining = lines[run + 1];
+    }
+    remaining--;
+    return lines[run];
+  }
+
+  private Expr readDepth(Expr expr) {
+    int depth = readVarint() - 1;
+    if (depth >= 0) interpreter.resolve(expr, depth);
+    return expr;
+  }
+
+  private Object readValue() {
+    byte tag = buffer.get();
+    switch (tag) {
+      case LIT_NIL:
+        return null;
+      case LIT_TRUE:
+        return true;
+      case LIT_FALSE:
+        return false;
+      case LIT_INT: {
+        int n = readVarint();
+        return (double) ((n >>> 1) ^ -(n & 1));
+      }
+      case LIT_NUMBER:
+        return buffer.getDouble();
+      case LIT_STRING:
+        return readString();
+      default:
+        throw new FormatError("Invalid literal tag " + tag);
+    }
+  }
+
+  /** Returns string of the string table referenced by the next varint */
+  private String readString() {
+    int index = readVarint();
+    if (index < 0 || index >= strings.length) throw new FormatError("Invalid string " + index);
+    return strings[index];
+  }
+
+  /** Returns count of elements that follow, every element takes at least one byte */
+  private int readLength() {
+    int length = readVarint();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new FormatError("Invalid length " + length);
+    }
+    return length;
+  }
+
+  /** Returns size of the list that follows, -1 if the list is null */
+  private int readSize() {
+    int size = readVarint() - 1;
+    if (size < -1 || size > buffer.remaining()) throw new FormatError("Invalid size " + size);
+    return size;
+  }
+
+  private int readVarint() {
+    int value = 0;
+    int shift = 0;
+    while (true) {
+      byte b = buffer.get();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) return value;
+      shift += 7;
+      if (shift > 28) throw new FormatError("Invalid varint");
+    }
+  }
+}
@@ -0,0 +1,353 @@
+package com.github.sadikovi;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.sadikovi.AstFormat.*;
+
+/**
+ * Serializes resolved statements into the binary format, see AstFormat.
+ * Resolution depths are taken from the interpreter that was used to resolve statements.
+ */
+class AstWriter implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+  private final Interpreter interpreter;
+  private final Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+  private final List<String> strings = new ArrayList<String>();
+  private final List<Integer> lines = new ArrayList<Integer>();
+  private final ByteArrayOutputStream nodes = new ByteArrayOutputStream();
+
+  AstWriter(Interpreter interpreter) {
+    this.interpreter = interpreter;
+  }
+
+  /** Returns serialized statements */
+  public byte[] write(List<Stmt> statements) {
+    writeVarint(nodes, statements.size());
+    for (Stmt statement : statements) {
+      writeStmt(statement);
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(nodes.size() + 1024);
+    out.write(MAGIC, 0, MAGIC.length);
+    out.write(VERSION);
+
+    writeVarint(out, strings.size());
+    for (String value : strings) {
+      byte[] bytes = value.getBytes(UTF8);
+      writeVarint(out, bytes.length);
+      out.write(bytes, 0, bytes.length);
+    }
+
+    writeLines(out);
+
+    byte[] body = nodes.toByteArray();
+    out.write(body, 0, body.length);
+    return out.toByteArray();
+  }
+
+  /** Writes run-length encoded token lines */
+  private void writeLines(ByteArrayOutputStream out) {
+    List<int[]> runs = new ArrayList<int[]>();
+    for (int line : lines) {
+      int[] last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+      if (last != null && last[0] == line) {
+        last[1]++;
+      } else {
+        runs.add(new int[] { line, 1 });
+      }
+    }
+
+    writeVarint(out, runs.size());
+    for (int[] run : runs) {
+      writeVarint(out, run[0]);
+      writeVarint(out, run[1]);
+    }
+  }
+
+  @Override
+  public Void visit(Stmt.Block stmt) {
+    nodes.write(STMT_BLOCK);
+    writeStmts(stmt.statements);
+    return null;
+  }
+
+  @Override
+  public Void visit(Stmt.Break stmt) {
+    nodes.write(STMT_BREAK);
+    return null;
+  }
+
+  @Override
+  public Void visit(Stmt.Class stmt) {
+    nodes.write(STMT_CLASS);
+    writeToken(stmt.name);
+    writeExpr(stmt.superclass);
+    writeStmts(stmt.methods);
+    writeStmts(stmt.classMethods);
+    return null;
+  }
+
+  @Override
+  public Void visit(Stmt.Expression stmt) {
+    nodes.write(STMT_EXPRESSION);
+    writeExpr(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visit(Stmt.Function stmt) {
+    nodes.write(STMT_FUNCTION);
+    writeToken(stmt.name);
+    writeTokens(stmt.params);
+    writeStmts(stmt.body);
+    return null;
+  }
+
+  @Override
+  public Void visit(Stmt.If stmt) {
+    nodes.write(STMT_IF);
+    writeExpr(stmt.condition);
+    writeStmt(stmt.thenBranch);
+    writeStmt(stmt.elseBranch);
+    return null;
+  }
+
+  @Override
+  public Void visit(Stmt.Print stmt) {
+    nodes.write(STMT_PRINT);
+    writeExpr(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visit(Stmt.Return stmt) {
+    nodes.write(STMT_RETURN);
+    writeToken(stmt.keyword);
+    writeExpr(stmt.value);
+    return null;
+  }
+
+  @Override
+  public Void visit(Stmt.While stmt) {
+    nodes.write(STMT_WHILE);
+    writeExpr(stmt.condition);
+    writeStmt(stmt.body);
+    return null;
+  }
+
+  @Override
+  public Void visit(Stmt.Var stmt) {
+    nodes.write(STMT_VAR);
+    writeToken(stmt.name);
+    writeExpr(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visit(Expr.Assign expr) {
+    nodes.write(EXPR_ASSIGN);
+    writeToken(expr.name);
+    writeExpr(expr.expression);
+    writeDepth(expr);
+    return null;
+  }
+
+  @Override
+  public Void visit(Expr.Binary expr) {
+    nodes.write(EXPR_BINARY);
+    writeExpr(expr.left);
+    writeToken(expr.operator);
+    writeExpr(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visit(Expr.Call expr) {
+    nodes.write(EXPR_CALL);
+    writeExpr(expr.callee);
+    writeToken(expr.paren);
+    writeVarint(nodes, expr.arguments.size());
+    for (Expr argument : expr.arguments) {
+      writeExpr(argument);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visit(Expr.Get expr) {
+    nodes.write(EXPR_GET);
+    writeExpr(expr.object);
+    writeToken(expr.name);
+    return null;
+  }
+
+  @Override
+  public Void visit(Expr.Grouping expr) {
+    nodes.write(EXPR_GROUPING);
+    writeExpr(expr.expression);
+    return null;
+  }
+
+  @Override
+  public Void visit(Expr.Lambda expr) {
+    nodes.write(EXPR_LAMBDA);
+    writeToken(expr.keyword);
+    writeTokens(expr.params);
+    writeStmts(expr.body);
+    return null;
+  }
+
+  @Override
+  public Void visit(Expr.Literal expr) {
+    nodes.write(EXPR_LITERAL);
+    writeValue(expr.value);
+    return null;
+  }
+
+  @Override
+  public Void visit(Expr.Logical expr) {
+    nodes.write(EXPR_LOGICAL);
+    writeExpr(expr.left);
+    writeToken(expr.operator);
+    writeExpr(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visit(Expr.Set expr) {
+    nodes.write(EXPR_SET);
+    writeExpr(expr.object);
+    writeToken(expr.name);
+    writeExpr(expr.value);
+    return null;
+  }
+
+  @Override
+  public Void visit(Expr.Super expr) {
+    nodes.write(EXPR_SUPER);
+    writeToken(expr.keyword);
+    writeToken(expr.method);
+    writeDepth(expr);
+    return null;
+  }
+
+  @Override
+  public Void visit(Expr.This expr) {
+    nodes.write(EXPR_THIS);
+    writeToken(expr.keyword);
+    writeDepth(expr);
+    return null;
+  }
+
+  @Override
+  public Void visit(Expr.Unary expr) {
+    nodes.write(EXPR_UNARY);
+    writeToken(expr.operator);
+    writeExpr(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visit(Expr.Variable expr) {
+    nodes.write(EXPR_VARIABLE);
+    writeToken(expr.name);
+    writeDepth(expr);
+    return null;
+  }
+
+  // Helper functions.
+
+  private void writeStmt(Stmt stmt) {
+    if (stmt == null) {
+      nodes.write(NULL);
+    } else {
+      stmt.accept(this);
+    }
+  }
+
+  private void writeExpr(Expr expr) {
+    if (expr == null) {
+      nodes.write(NULL);
+    } else {
+      expr.accept(this);
+    }
+  }
+
+  private void writeStmts(List<? extends Stmt> statements) {
+    if (statements == null) {
+      writeVarint(nodes, 0);
+      return;
+    }
+    writeVarint(nodes, statements.size() + 1);
+    for (Stmt statement : statements) {
+      writeStmt(statement);
+    }
+  }
+
+  private void writeTokens(List<Token> tokens) {
+    if (tokens == null) {
+      writeVarint(nodes, 0);
+      return;
+    }
+    writeVarint(nodes, tokens.size() + 1);
+    for (Token token : tokens) {
+      writeToken(token);
+    }
+  }
+
+  private void writeToken(Token token) {
+    nodes.write(token.type.ordinal());
+    writeVarint(nodes, intern(token.lexeme));
+    lines.add(token.line);
+  }
+
+  private void writeDepth(Expr expr) {
+    Integer depth = interpreter.getDepth(expr);
+    writeVarint(nodes, (depth == null) ? 0 : depth + 1);
+  }
+
+  private void writeValue(Object value) {
+    if (value == null) {
+      nodes.write(LIT_NIL);
+    } else if (value instanceof Boolean) {
+      nodes.write((Boolean) value ? LIT_TRUE : LIT_FALSE);
+    } else if (value instanceof Double) {
+      double number = (Double) value;
+      if (number == (int) number && !(number == 0 && 1 / number < 0)) {
+        nodes.write(LIT_INT);
+        int n = (int) number;
+        writeVarint(nodes, (n << 1) ^ (n >> 31));
+      } else {
+        nodes.write(LIT_NUMBER);
+        long bits = Double.doubleToLongBits(number);
+        for (int i = 7; i >= 0; i--) {
+          nodes.write((int) (bits >>> (i * 8)));
+        }
+      }
+    } else {
+      nodes.write(LIT_STRING);
+      writeVarint(nodes, intern((String) value));
+    }
+  }
+
+  private int intern(String value) {
+    Integer index = stringIndex.get(value);
+    if (index == null) {
+      index = strings.size();
+      strings.add(value);
+      stringIndex.put(value, index);
+    }
+    return index;
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+}
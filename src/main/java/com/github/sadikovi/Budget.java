@@ -0,0 +1,91 @@
+package com.github.sadikovi;
+
+/**
+ * Execution limits of the interpreter: number of steps, wall-clock timeout and number of allocated
+ * instances, see `--max-steps`, `--timeout` and `--max-allocations` flags.
+ *
+ * Steps are counted at loop back-edges and function entries, the clock and cancellation flag are
+ * checked every `CHECK_INTERVAL` steps to keep the check cheap. Exceeding a limit throws
+ * RuntimeError that unwinds like any other runtime error. Counters and the deadline are reset at
+ * the start of every `Interpreter.interpret`, so the interpreter can run the next program.
+ *
+ * Allocations count class instances and native containers (arrays, maps and string builders,
+ * including arrays returned by natives), not environments, closures or strings, so the cap bounds
+ * the number of objects a program creates rather than its memory.
+ */
+class Budget {
+  static final long UNLIMITED = Long.MAX_VALUE;
+  // Must be a power of 2
+  private static final int CHECK_INTERVAL = 1024;
+
+  private long maxSteps = UNLIMITED;
+  private long timeoutNanos = UNLIMITED;
+  private long maxAllocations = UNLIMITED;
+  private long steps = 0;
+  private long allocations = 0;
+  private long deadline = UNLIMITED; // System.nanoTime() when the timeout expires
+  private volatile boolean cancelled = false;
+
+  public void setMaxSteps(long maxSteps) {
+    if (maxSteps < 1) throw new IllegalArgumentException("Max steps must be positive");
+    this.maxSteps = maxSteps;
+  }
+
+  /** Sets the timeout, timeouts that do not fit in nanoseconds (about 292 years) are unlimited */
+  public void setTimeoutMillis(long timeoutMillis) {
+    if (timeoutMillis < 1) throw new IllegalArgumentException("Timeout must be positive");
+    this.timeoutNanos =
+      (timeoutMillis >= UNLIMITED / 1000000L) ? UNLIMITED : timeoutMillis * 1000000L;
+  }
+
+  public void setMaxAllocations(long maxAllocations) {
+    if (maxAllocations < 1) throw new IllegalArgumentException("Max allocations must be positive");
+    this.maxAllocations = maxAllocations;
+  }
+
+  /** Copies limits of another budget */
+  public void setLimits(Budget other) {
+    this.maxSteps = other.maxSteps;
+    this.timeoutNanos = other.timeoutNanos;
+    this.maxAllocations = other.maxAllocations;
+  }
+
+  /** Resets counters and starts the timeout, called before running a program */
+  public void reset() {
+    steps = 0;
+    allocations = 0;
+    deadline = (timeoutNanos == UNLIMITED) ? UNLIMITED : System.nanoTime() + timeoutNanos;
+  }
+
+  /**
+   * Requests the running program to stop at the next check, can be called from any thread.
+   * Cancellation is pending until a check consumes it, so cancelling before the program starts
+   * stops the next program.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  /** Counts a step, token can be null if there is no token at the check */
+  public void step(Token token) {
+    if (++steps > maxSteps) {
+      throw new RuntimeError(token, "Exceeded step budget of " + maxSteps);
+    }
+    if ((steps & (CHECK_INTERVAL - 1)) == 0) {
+      if (cancelled) {
+        cancelled = false;
+        throw new RuntimeError(token, "Execution cancelled");
+      }
+      if (deadline != UNLIMITED && System.nanoTime() - deadline > 0) {
+        throw new RuntimeError(token, "Exceeded timeout of " + (timeoutNanos / 1000000L) + " ms");
+      }
+    }
+  }
+
+  /** Counts an allocated instance, natives pass null token */
+  public void allocate(Token token) {
+    if (++allocations > maxAllocations) {
+      throw new RuntimeError(token, "Exceeded allocation budget of " + maxAllocations);
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package com.github.sadikovi;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reader that decodes characters from a byte buffer on demand, e.g. from a memory-mapped file.
+ * Only the requested number of characters is decoded at a time.
+ */
+class ByteBufferReader extends Reader {
+  private final ByteBuffer buffer;
+  private final CharsetDecoder decoder;
+  private boolean decoded; // true when all bytes are decoded
+  private boolean flushed; // true when decoder state is flushed
+
+  ByteBufferReader(ByteBuffer buffer, Charset charset) {
+    this.buffer = buffer;
+    this.decoder = charset.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    this.decoded = false;
+    this.flushed = false;
+  }
+
+  @Override
+  public int read(char[] chars, int offset, int length) throws CharacterCodingException {
+    if (length == 0) return 0;
+    if (flushed) return -1;
+
+    CharBuffer out = CharBuffer.wrap(chars, offset, length);
+    if (!decoded) {
+      CoderResult result = decoder.decode(buffer, out, true);
+      if (result.isError()) result.throwException();
+      decoded = result.isUnderflow();
+    }
+    if (decoded) {
+      // All bytes are decoded, flush the remaining state of the decoder
+      flushed = decoder.flush(out).isUnderflow();
+    }
+
+    int count = out.position() - offset;
+    return (count == 0 && flushed) ? -1 : count;
+  }
+
+  @Override
+  public void close() {
+    // Nothing to close, buffer is released once it is garbage collected
+  }
+}
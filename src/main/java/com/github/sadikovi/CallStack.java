@@ -0,0 +1,79 @@
+package com.github.sadikovi;
+
+import java.util.Arrays;
+
+/**
+ * Lox-level call stack maintained by the interpreter.
+ * Each frame stores the name of the called function and the line of the caller at the call site,
+ * the line of the top frame is updated while evaluating expressions. The stack is read without
+ * synchronization by the sampling profiler, so snapshots are approximate, see Profiler.
+ */
+class CallStack {
+  static final String SCRIPT = "<script>";
+
+  private String[] names = new String[64];
+  private int[] lines = new int[64]; // line of the caller when the frame was pushed
+  private int depth = 0;
+  int line = 0; // current line of the top frame
+
+  /** Pushes frame of the called function */
+  public void push(String name) {
+    if (depth == names.length) {
+      names = Arrays.copyOf(names, depth * 2);
+      lines = Arrays.copyOf(lines, depth * 2);
+    }
+    names[depth] = name;
+    lines[depth] = line;
+    depth++;
+  }
+
+  /** Pops frame of the returned function and restores the line of the caller */
+  public void pop() {
+    depth--;
+    line = lines[depth];
+    names[depth] = null;
+  }
+
+  /** Returns number of function frames, the script frame is not included */
+  public int depth() {
+    return depth;
+  }
+
+  /**
+   * Copies function names of the frames from bottom to top into `frames` and returns the number of
+   * copied frames or -1 if the stack changed while copying.
+   */
+  public int snapshot(String[] frames) {
+    String[] names = this.names;
+    int count = Math.min(depth, Math.min(names.length, frames.length));
+    for (int i = 0; i < count; i++) {
+      frames[i] = names[i];
+      if (frames[i] == null) return -1;
+    }
+    return count;
+  }
+
+  /** Returns function name of the frame, 0 is the bottom frame */
+  public String name(int frame) {
+    return names[frame];
+  }
+
+  /** Returns current line of the frame, 0 is the bottom frame */
+  public int line(int frame) {
+    return (frame == depth - 1) ? line : lines[frame + 1];
+  }
+
+  /** Returns Lox stack trace from the top frame, only `limit` top and bottom frames are included */
+  public String trace(int limit) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = depth - 1; i >= 0; i--) {
+      if (depth > 2 * limit && i < depth - limit && i >= limit) {
+        if (i == limit) sb.append("  ... ").append(depth - 2 * limit).append(" more\n");
+        continue;
+      }
+      sb.append("  at ").append(names[i]).append(" [line ").append(line(i)).append("]\n");
+    }
+    sb.append("  at ").append(SCRIPT).append(" [line ").append(depth == 0 ? line : lines[0]);
+    return sb.append("]").toString();
+  }
+}
@@ -0,0 +1,344 @@
+package com.github.sadikovi;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves script execution on a loopback socket, see `--daemon` and `--connect` flags.
+ *
+ * request      -> int(length) utf8-bytes of ( "run" SP path | "eval" LF source ) ;
+ * response     -> frame* exit ;
+ * frame        -> byte(OUT | ERR) int(length) utf8-bytes ;
+ * exit         -> byte(EXIT) int(status) ;
+ *
+ * Requests are limited to MAX_REQUEST_BYTES and must arrive within the read timeout. Scripts of
+ * `run` requests must be inside the working directory of the daemon, so other local users cannot
+ * read arbitrary files through it. Every request runs in a fresh global environment on an
+ * interpreter taken from a pool of interpreters that are created ahead with natives and the
+ * prelude defined, a taken interpreter is replaced after the response is sent. The JVM and the
+ * interpreter code stay warm across requests. Exit statuses are the same as for `jlox script`.
+ */
+class Daemon {
+  static final byte OUT = 1;
+  static final byte ERR = 2;
+  static final byte EXIT = 3;
+  static final int MAX_REQUEST_BYTES = 16 << 20;
+  static final int READ_TIMEOUT_MILLIS = 10000;
+
+  private final int port;
+  private final int threads;
+  private final long stackSize;
+  private final Interpreter template; // limits of pooled interpreters
+  private final ByteBuffer prelude; // image or source, can be null
+  private final Path root; // real path of the directory with scripts of `run` requests
+  private final BlockingQueue<Interpreter> pool;
+  private int readTimeoutMillis = READ_TIMEOUT_MILLIS;
+
+  Daemon(int port, int threads, long stackSize, Interpreter template, ByteBuffer prelude,
+      Path root) throws IOException {
+    this.port = port;
+    this.threads = threads;
+    this.stackSize = stackSize;
+    this.template = template;
+    this.prelude = prelude;
+    this.root = root.toRealPath();
+    this.pool = new ArrayBlockingQueue<Interpreter>(threads);
+  }
+
+  /** Sets time to wait for the request after a client connects */
+  void setReadTimeout(int millis) {
+    this.readTimeoutMillis = millis;
+  }
+
+  /** Returns number of interpreters in the pool */
+  int pooled() {
+    return pool.size();
+  }
+
+  /** Fills the pool and serves connections until the process is stopped */
+  public void serve() throws IOException {
+    try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+      System.err.println("Listening on " + server.getLocalSocketAddress());
+      serve(server);
+    }
+  }
+
+  /** Fills the pool and serves connections until the server socket is closed */
+  void serve(ServerSocket server) throws IOException {
+    for (int i = 0; i < threads; i++) {
+      pool.add(newInterpreter());
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable task) {
+        Thread thread = new Thread(null, task, "lox-daemon-" + count.incrementAndGet(), stackSize);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    try {
+      while (true) {
+        final Socket socket = server.accept();
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            handle(socket);
+          }
+        });
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Returns interpreter with natives and the prelude defined */
+  private Interpreter newInterpreter() {
+    Interpreter interpreter = new Interpreter();
+    interpreter.setMaxDepth(template.maxDepth);
+    interpreter.budget.setLimits(template.budget);
+    if (prelude == null) return interpreter;
+
+    ByteBuffer buffer = prelude.duplicate();
+    if (Snapshot.hasMagic(buffer)) {
+      Snapshot.read(buffer, interpreter);
+    } else {
+      String source = Charset.defaultCharset().decode(buffer).toString();
+      int status = run(interpreter, source, System.err);
+      if (status != 0) throw new IllegalStateException("Prelude failed with status " + status);
+    }
+    return interpreter;
+  }
+
+  private void handle(Socket socket) {
+    boolean taken = false; // interpreter was taken from the pool and must be replaced
+    try (Socket s = socket) {
+      s.setSoTimeout(readTimeoutMillis);
+      DataOutputStream out = new DataOutputStream(s.getOutputStream());
+      String source;
+      try {
+        source = readRequest(s.getInputStream());
+      } catch (IOException err) {
+        frame(out, ERR, "Cannot read request: " + err.getMessage() + "\n");
+        exit(out, 66);
+        return;
+      }
+
+      Interpreter interpreter = pool.poll();
+      taken = interpreter != null;
+      if (interpreter == null) {
+        try {
+          interpreter = newInterpreter();
+        } catch (RuntimeException err) {
+          frame(out, ERR, "Cannot create interpreter: " + err.getMessage() + "\n");
+          exit(out, 70);
+          return;
+        }
+      }
+      interpreter.setOutput(OutputSink.of(new FrameWriter(out, OUT)));
+      int status = run(interpreter, source, new PrintStream(new FrameStream(out, ERR), true));
+      exit(out, status);
+    } catch (IOException | UncheckedIOException err) {
+      // client is gone, nothing to report
+    }
+    if (taken) refill();
+  }
+
+  /** Adds a new interpreter to the pool, the next request creates one if this fails */
+  private void refill() {
+    try {
+      pool.offer(newInterpreter());
+    } catch (RuntimeException err) {
+      System.err.println("Cannot create interpreter: " + err.getMessage());
+    }
+  }
+
+  /** Returns source of the request */
+  private String readRequest(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+    int length = data.readInt();
+    if (length < 0 || length > MAX_REQUEST_BYTES) {
+      throw new IOException("Request of " + length + " bytes exceeds the limit of " +
+        MAX_REQUEST_BYTES + " bytes");
+    }
+    byte[] bytes = new byte[length];
+    data.readFully(bytes);
+    String request = new String(bytes, AstFormat.UTF8);
+    int end = request.indexOf('\n');
+    String header = (end < 0) ? request : request.substring(0, end);
+    if (header.equals("eval")) {
+      return (end < 0) ? "" : request.substring(end + 1);
+    }
+    if (header.startsWith("run ")) {
+      return new String(Files.readAllBytes(script(header.substring(4))), AstFormat.UTF8);
+    }
+    throw new IOException("Invalid request '" + header + "'");
+  }
+
+  /** Returns real path of the script, throws IOException if it is outside of the root */
+  private Path script(String path) throws IOException {
+    Path script = root.resolve(path).toRealPath();
+    if (!script.startsWith(root)) {
+      throw new IOException("Script " + path + " is outside of " + root);
+    }
+    return script;
+  }
+
+  /**
+   * Scans, parses, resolves and evaluates source, errors are written into `err`.
+   * Returns 0 on success, 64 on syntax or resolution errors and 70 on runtime errors.
+   */
+  private static int run(Interpreter interpreter, String source, PrintStream err) {
+    List<Stmt> statements;
+    List<String> errors;
+    Lox.deferErrors();
+    try {
+      statements = new Parser(new Scanner(source).stream()).parse();
+      if (Lox.deferredCount() == 0) new Resolver(interpreter).resolve(statements);
+    } finally {
+      errors = Lox.collectErrors();
+    }
+    if (!errors.isEmpty()) {
+      print(err, errors);
+      return 64;
+    }
+
+    Lox.deferErrors();
+    try {
+      interpreter.interpret(statements, false);
+    } finally {
+      errors = Lox.collectErrors();
+    }
+    print(err, errors);
+    return errors.isEmpty() ? 0 : 70;
+  }
+
+  private static void print(PrintStream err, List<String> errors) {
+    for (String error : errors) {
+      err.println(error);
+    }
+  }
+
+  private static void frame(DataOutputStream out, byte channel, String text) throws IOException {
+    byte[] bytes = text.getBytes(AstFormat.UTF8);
+    out.writeByte(channel);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+    out.flush();
+  }
+
+  private static void exit(DataOutputStream out, int status) throws IOException {
+    out.writeByte(EXIT);
+    out.writeInt(status);
+    out.flush();
+  }
+
+  /** Sends request to the daemon, copies output frames into stdout and stderr, returns status */
+  static int connect(int port, String request) throws IOException {
+    return connect(port, request, System.out, System.err);
+  }
+
+  /** Sends request to the daemon, copies output frames into the streams, returns status */
+  static int connect(int port, String request, PrintStream stdout, PrintStream stderr)
+      throws IOException {
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      byte[] bytes = request.getBytes(AstFormat.UTF8);
+      if (bytes.length > MAX_REQUEST_BYTES) {
+        stderr.println("Request of " + bytes.length + " bytes exceeds the limit of " +
+          MAX_REQUEST_BYTES + " bytes");
+        return 66;
+      }
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      out.writeInt(bytes.length);
+      out.write(bytes);
+      out.flush();
+
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      while (true) {
+        byte channel = in.readByte();
+        if (channel == EXIT) {
+          stdout.flush();
+          return in.readInt();
+        }
+        byte[] frame = new byte[in.readInt()];
+        in.readFully(frame);
+        PrintStream target = (channel == ERR) ? stderr : stdout;
+        target.write(frame, 0, frame.length);
+        target.flush();
+      }
+    } catch (EOFException err) {
+      stderr.println("Daemon closed the connection");
+      return 70;
+    }
+  }
+
+  /** Writer that sends characters as frames of the channel */
+  private static class FrameWriter extends Writer {
+    private final DataOutputStream out;
+    private final byte channel;
+
+    FrameWriter(DataOutputStream out, byte channel) {
+      this.out = out;
+      this.channel = channel;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+      frame(out, channel, new String(chars, offset, length));
+    }
+
+    @Override
+    public void flush() { }
+
+    @Override
+    public void close() { }
+  }
+
+  /** Stream that sends bytes as frames of the channel */
+  private static class FrameStream extends OutputStream {
+    private final DataOutputStream out;
+    private final byte channel;
+
+    FrameStream(DataOutputStream out, byte channel) {
+      this.out = out;
+      this.channel = channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      out.writeByte(channel);
+      out.writeInt(length);
+      out.write(bytes, offset, length);
+      out.flush();
+    }
+  }
+}
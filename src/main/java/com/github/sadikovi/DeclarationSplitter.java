@@ -0,0 +1,160 @@
+package com.github.sadikovi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits source into chunks of top-level declarations without scanning tokens.
+ *
+ * Chunk ends after ";" or "}" outside of any braces and parentheses, unless the declaration
+ * continues, e.g. with "else". The split is conservative: when in doubt several declarations are
+ * kept in one chunk, so every chunk can be parsed on its own.
+ */
+class DeclarationSplitter {
+  /** Source of one or more top-level declarations */
+  static class Chunk {
+    final String source;
+    final int offset; // offset of the chunk in the whole source
+    final int line; // line of the first character in the source
+
+    Chunk(String source, int offset, int line) {
+      this.source = source;
+      this.offset = offset;
+      this.line = line;
+    }
+  }
+
+  private final String source;
+  private int current;
+  private int line;
+
+  private DeclarationSplitter(String source) {
+    this.source = source;
+    this.current = 0;
+    this.line = 1;
+  }
+
+  /** Returns chunks of the source, whitespace between chunks is dropped */
+  public static List<Chunk> split(String source) {
+    return new DeclarationSplitter(source).split();
+  }
+
+  private List<Chunk> split() {
+    List<Chunk> chunks = new ArrayList<Chunk>();
+    int depth = 0;
+
+    skipWhitespace();
+    int start = current;
+    int startLine = line;
+
+    while (!isAtEnd()) {
+      if (skipString() || skipComment()) continue;
+      char c = source.charAt(current);
+      advance();
+
+      if (c == '{' || c == '(') {
+        depth++;
+      } else if (c == '}' || c == ')') {
+        if (depth > 0) depth--;
+      }
+
+      if (depth == 0 && (c == ';' || c == '}') && isBoundary(c)) {
+        chunks.add(new Chunk(source.substring(start, current), start, startLine));
+        skipWhitespace();
+        start = current;
+        startLine = line;
+      }
+    }
+
+    if (start < source.length()) {
+      chunks.add(new Chunk(source.substring(start), start, startLine));
+    }
+    return chunks;
+  }
+
+  /** Returns true if the declaration that ends with character `c` is not continued */
+  private boolean isBoundary(char c) {
+    int saved = current;
+    int savedLine = line;
+    try {
+      skipWhitespace();
+      if (isAtEnd()) return true;
+
+      char next = source.charAt(current);
+      if (isAlpha(next)) {
+        String word = word();
+        if (word.equals("else")) return false;
+        // function expression can be followed by logical operators
+        return c == ';' || !(word.equals("and") || word.equals("or"));
+      }
+      return c == ';' || next == '{';
+    } finally {
+      current = saved;
+      line = savedLine;
+    }
+  }
+
+  /** Skips string literal at the current position, returns false if there is none */
+  private boolean skipString() {
+    if (source.charAt(current) != '"') return false;
+    current++;
+    while (!isAtEnd() && source.charAt(current) != '"') advance();
+    if (!isAtEnd()) current++;
+    return true;
+  }
+
+  /** Skips comment at the current position, returns false if there is none */
+  private boolean skipComment() {
+    if (source.startsWith("//", current)) {
+      while (!isAtEnd() && source.charAt(current) != '\n') current++;
+      return true;
+    }
+    if (source.startsWith("/*", current)) {
+      current += 2;
+      while (!isAtEnd() && !source.startsWith("*/", current)) advance();
+      current = Math.min(current + 2, source.length());
+      return true;
+    }
+    return false;
+  }
+
+  /** Skips whitespace and comments */
+  private void skipWhitespace() {
+    while (!isAtEnd()) {
+      if (isWhitespace(source.charAt(current))) {
+        advance();
+      } else if (!skipComment()) {
+        break;
+      }
+    }
+  }
+
+  private String word() {
+    int start = current;
+    while (!isAtEnd() && (isAlpha(source.charAt(current)) || isDigit(source.charAt(current)))) {
+      current++;
+    }
+    return source.substring(start, current);
+  }
+
+  private void advance() {
+    if (source.charAt(current) == '\n') line++;
+    current++;
+  }
+
+  private boolean isAtEnd() {
+    return current >= source.length();
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\r' || c == '\t' || c == '\n';
+  }
+
+  private static boolean isAlpha(char c) {
+    return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+}
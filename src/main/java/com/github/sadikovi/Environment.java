@@ -1,5 +1,6 @@
 package com.github.sadikovi;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -15,10 +16,12 @@ class Environment {
 
   Environment() {
     this.enclosing = null;
+    Metrics.environments++;
   }
 
   Environment(Environment enclosing) {
     this.enclosing = enclosing;
+    Metrics.environments++;
   }
 
   /**
@@ -36,6 +39,19 @@ class Environment {
     values.put(name, NO_INIT);
   }
 
+  /**
+   * Returns variables of this environment, uninitialised variables have values for which
+   * `isInitialised` returns false. Used to snapshot environments, see Snapshot.
+   */
+  Map<String, Object> values() {
+    return Collections.unmodifiableMap(values);
+  }
+
+  /** Returns false if value is a marker of an uninitialised variable */
+  static boolean isInitialised(Object value) {
+    return value != NO_INIT;
+  }
+
   /**
    * Returns value for a defined variable or throws a runtime error.
    */
@@ -6,6 +6,10 @@ import java.util.List;
  * Expressions for the parser.
  */
 abstract class Expr {
+  // Resolved scope distance of a variable, `this` or `super` access, -1 for global variables.
+  // Kept on the node so that it lives as long as the syntax tree, see Resolver.
+  int depth = -1;
+
   static class Assign extends Expr {
     final Token name;
     final Expr expression;
@@ -0,0 +1,127 @@
+package com.github.sadikovi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Front end for tools that re-submit the whole source after every edit, e.g. notebooks.
+ *
+ * Source is split into top-level declarations, see DeclarationSplitter. Declarations are
+ * fingerprinted by their text and starting line, only the ones that changed since the previous
+ * submission are scanned, parsed and resolved. Statements of the other declarations are reused
+ * together with their resolution in the interpreter. Each chunk is resolved on its own in the
+ * global scope, so its text and line determine the resolution of its nodes. Reused nodes are not
+ * resolved again, a chunk that repeats on another line gets its own nodes.
+ */
+class IncrementalParser {
+  /** Text and starting line of a chunk */
+  private static class Key {
+    final String source;
+    final int line;
+
+    Key(String source, int line) {
+      this.source = source;
+      this.line = line;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) return false;
+      Key key = (Key) other;
+      return line == key.line && source.equals(key.source);
+    }
+
+    @Override
+    public int hashCode() {
+      return source.hashCode() * 31 + line;
+    }
+  }
+
+  /** Statements of a parsed chunk and whether they are free of errors */
+  private static class Chunk {
+    final List<Stmt> statements;
+    final boolean valid;
+
+    Chunk(List<Stmt> statements, boolean valid) {
+      this.statements = statements;
+      this.valid = valid;
+    }
+  }
+
+  private final Interpreter interpreter;
+  private Map<Key, List<Stmt>> cache; // parsed and resolved statements of chunks
+  private int reused; // number of chunks reused in the last submission
+  private int parsed; // number of chunks parsed in the last submission
+  private boolean hadError; // true if a chunk of the last submission had errors
+
+  IncrementalParser(Interpreter interpreter) {
+    this.interpreter = interpreter;
+    this.cache = new HashMap<Key, List<Stmt>>();
+  }
+
+  /**
+   * Returns resolved statements of the source. Errors are reported through Lox, chunks with
+   * errors are parsed again on the next submission.
+   */
+  public List<Stmt> parse(String source) {
+    Map<Key, List<Stmt>> entries = new HashMap<Key, List<Stmt>>();
+    List<Stmt> statements = new ArrayList<Stmt>();
+    reused = 0;
+    parsed = 0;
+    hadError = false;
+
+    for (DeclarationSplitter.Chunk chunk : DeclarationSplitter.split(source)) {
+      Key key = new Key(chunk.source, chunk.line);
+      List<Stmt> chunkStatements = cache.get(key);
+      boolean valid = true;
+      if (chunkStatements != null) {
+        reused++;
+      } else {
+        parsed++;
+        Chunk result = parse(chunk);
+        chunkStatements = result.statements;
+        valid = result.valid;
+      }
+      hadError |= !valid;
+
+      if (valid) entries.put(key, chunkStatements);
+      statements.addAll(chunkStatements);
+    }
+
+    // Chunks that are no longer in the source are dropped
+    cache = entries;
+    return statements;
+  }
+
+  /**
+   * Scans, parses and resolves a chunk. Errors are checked on the scanner, parser and resolver of
+   * the chunk rather than on the global error count of Lox, which is shared between threads and
+   * does not change while errors are deferred.
+   */
+  private Chunk parse(DeclarationSplitter.Chunk chunk) {
+    Scanner scanner = new Scanner(chunk.source, chunk.line);
+    Parser parser = new Parser(scanner.stream());
+    List<Stmt> statements = parser.parse();
+    if (scanner.hadError() || parser.hadError()) return new Chunk(statements, false);
+    Resolver resolver = new Resolver(interpreter);
+    resolver.resolve(statements);
+    return new Chunk(statements, !resolver.hadError());
+  }
+
+  /** Returns number of declaration chunks reused in the last submission */
+  public int reused() {
+    return reused;
+  }
+
+  /** Returns number of declaration chunks parsed in the last submission */
+  public int parsed() {
+    return parsed;
+  }
+
+  /** Returns true if any chunk of the last submission had errors */
+  public boolean hadError() {
+    return hadError;
+  }
+}
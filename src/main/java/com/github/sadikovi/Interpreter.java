@@ -1,7 +1,9 @@
 package com.github.sadikovi;
 
+import java.lang.invoke.MethodHandle;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -11,31 +13,61 @@ import com.github.sadikovi.TokenType.*;
  * Evaluates expressions.
  */
 class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+  static final int DEFAULT_MAX_DEPTH = 10000;
+  // Largest accepted maximum depth, keeps the Java stack reserved for it around 1 GB, see Lox
+  static final int MAX_DEPTH = 1 << 17;
+  // Number of top and bottom frames in the stack trace of stack overflow errors
+  static final int TRACE_FRAMES = 10;
+
   // Represents the current environment (global or for a current block)
   final Environment globals = new Environment();
   private Environment env = globals;
-  private final Map<Expr, Integer> locals = new HashMap<Expr, Integer>();
+  // Maximum number of nested Lox calls, deeper calls fail with stack overflow error
+  int maxDepth = DEFAULT_MAX_DEPTH;
+  // Step, time and allocation limits checked at loop back-edges and function entries
+  final Budget budget = new Budget();
+  private OutputSink output = OutputSink.stdout();
+  // Lox call stack, lines are updated on variable access, assignments, operators and calls
+  final CallStack callStack = new CallStack();
+  // Names under which natives are defined, natives are stored by name in images, see Snapshot
+  final Map<Object, String> natives = new IdentityHashMap<Object, String>();
+  // Syntax trees kept across submissions, null unless tracked
+  private Retention retention = null;
 
   Interpreter() {
-    globals.define("clock", new LoxCallable() {
-      @Override
-      public int arity() {
-        return 0;
-      }
+    Natives.define(globals);
+    for (Map.Entry<String, Object> entry : globals.values().entrySet()) {
+      natives.put(entry.getValue(), entry.getKey());
+    }
+  }
 
-      @Override
-      public Object call(Interpreter interpreter, List<Object> arguments) {
-        return (double) System.currentTimeMillis() / 1000.0;
-      }
+  /**
+   * Defines global function that calls the method handle, e.g. `defineNative("sqrt",
+   * lookup.findStatic(Math.class, "sqrt", methodType(double.class, double.class)))`.
+   * See JavaFunction for supported types, unsupported handles are rejected here.
+   */
+  public void defineNative(String name, MethodHandle handle) {
+    defineNative(name, JavaFunction.of(name, handle));
+  }
 
-      @Override
-      public String toString() {
-        return "<native fn>";
-      }
-    });
+  /** Defines global function that calls public static method, see JavaFunction */
+  public void defineNative(String name, Class<?> owner, String method) {
+    defineNative(name, JavaFunction.ofStatic(name, owner, method));
+  }
+
+  /** Defines global function that calls public method of the receiver, see JavaFunction */
+  public void defineNative(String name, Object receiver, String method) {
+    defineNative(name, JavaFunction.ofMethod(name, receiver, method));
+  }
+
+  private void defineNative(String name, JavaFunction function) {
+    globals.define(name, function);
+    natives.put(function, name);
   }
 
   public void interpret(List<Stmt> statements, boolean printExpressions) {
+    budget.reset();
+    if (retention != null) retention.track(statements);
     try {
       for (Stmt statement : statements) {
         if (printExpressions && statement instanceof Stmt.Expression) {
@@ -46,8 +78,49 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
       }
     } catch (RuntimeError error) {
-      Lox.runtimeError(error);
+      // flush output first so the error follows the printed values
+      output.flush();
+      Lox.runtimeError(error, callStack.line);
+    } catch (StackOverflowError error) {
+      // Java stack is exhausted outside of a function call, e.g. deeply nested expression
+      output.flush();
+      Lox.runtimeError(new RuntimeError(null, "Stack overflow", callStack.trace(TRACE_FRAMES)),
+        callStack.line);
+    } finally {
+      output.flush();
+    }
+  }
+
+  /**
+   * Sets maximum depth of Lox calls, calls are counted on the call stack and the call that exceeds
+   * the depth fails with a runtime error. Deep recursion also needs a large Java stack, run the
+   * interpreter on a thread with enough stack size, see `Lox.stackSize`.
+   */
+  public void setMaxDepth(int maxDepth) {
+    if (maxDepth < 1 || maxDepth > MAX_DEPTH) {
+      throw new IllegalArgumentException("Max depth must be between 1 and " + MAX_DEPTH);
     }
+    this.maxDepth = maxDepth;
+  }
+
+  /**
+   * Starts accounting of syntax trees retained by functions of the following submissions and
+   * returns the accounting, repeated calls return the same instance.
+   */
+  public Retention trackRetention() {
+    if (retention == null) retention = new Retention();
+    return retention;
+  }
+
+  /** Returns sink of `print` statements */
+  public OutputSink getOutput() {
+    return output;
+  }
+
+  /** Redirects output of `print` statements, the current sink is flushed */
+  public void setOutput(OutputSink output) {
+    this.output.flush();
+    this.output = output;
   }
 
   @Override
@@ -58,6 +131,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Void visit(Stmt.Break stmt) {
+    Metrics.controlFlowExceptions++;
     throw new Break();
   }
 
@@ -125,7 +199,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   @Override
   public Void visit(Stmt.Print stmt) {
     Object value = eval(stmt.expression);
-    System.out.println(stringify(value));
+    output.println(value);
     return null;
   }
 
@@ -135,6 +209,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     if (stmt.value != null) {
       value = eval(stmt.value);
     }
+    Metrics.controlFlowExceptions++;
     throw new Return(value);
   }
 
@@ -147,6 +222,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         // stop while loop
         break;
       }
+      budget.step(null);
     }
     return null;
   }
@@ -164,10 +240,10 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   @Override
   public Object visit(Expr.Assign expr) {
     Object value = eval(expr.expression);
+    callStack.line = expr.name.line;
 
-    Integer distance = locals.get(expr);
-    if (distance != null) {
-      env.assignAt(expr.name, value, distance);
+    if (expr.depth >= 0) {
+      env.assignAt(expr.name, value, expr.depth);
     } else {
       globals.assign(expr.name, value);
     }
@@ -179,6 +255,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     Object left = eval(expr.left);
     Object right = eval(expr.right);
     Token token = expr.operator;
+    callStack.line = token.line;
 
     switch (token.type) {
       case GREATER:
@@ -199,8 +276,10 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
         // If one of the operands is a string concatenate, also handles nil
         if (isString(left)) {
+          Metrics.stringConcatenations++;
           return getString(token, left) + stringify(right);
         } else if (isString(right)) {
+          Metrics.stringConcatenations++;
           return stringify(left) + getString(token, right);
         }
         throw new RuntimeError(token, "Both operands must be numbers or strings");
@@ -214,6 +293,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
           if (hasFraction(right)) {
             throw new RuntimeError(token, "Can't multiply by a floating-point number");
           }
+          Metrics.stringConcatenations++;
           StringBuilder sb = new StringBuilder();
           for (int i = 0; i < (int) getNumber(token, right); i++) {
             sb.append(getString(token, left));
@@ -234,6 +314,9 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   @Override
   public Object visit(Expr.Call expr) {
     Object callee = eval(expr.callee);
+    if (callee instanceof JavaFunction && expr.arguments.size() <= JavaFunction.MAX_FAST_ARITY) {
+      return callJava((JavaFunction) callee, expr);
+    }
 
     List<Object> arguments = new ArrayList<Object>();
     for (Expr argument : expr.arguments) {
@@ -245,13 +328,46 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     LoxCallable function = (LoxCallable) callee;
+    callStack.line = expr.paren.line;
 
     if (function.arity() != arguments.size()) {
       throw new RuntimeError(expr.paren,
         "Expected " + function.arity() + " arguments, got " + arguments.size());
     }
 
-    return function.call(this, arguments);
+    try {
+      return function.call(this, arguments);
+    } catch (RuntimeError error) {
+      // natives do not know the call site
+      if (error.token == null) throw new RuntimeError(expr.paren, error.getMessage(), error.trace);
+      throw error;
+    }
+  }
+
+  /** Calls Java function with evaluated arguments directly, without argument list */
+  private Object callJava(JavaFunction function, Expr.Call expr) {
+    List<Expr> args = expr.arguments;
+    Object a = (args.size() > 0) ? eval(args.get(0)) : null;
+    Object b = (args.size() > 1) ? eval(args.get(1)) : null;
+    Object c = (args.size() > 2) ? eval(args.get(2)) : null;
+    callStack.line = expr.paren.line;
+
+    if (function.arity() != args.size()) {
+      throw new RuntimeError(expr.paren,
+        "Expected " + function.arity() + " arguments, got " + args.size());
+    }
+
+    try {
+      switch (args.size()) {
+        case 0: return function.call();
+        case 1: return function.call(a);
+        case 2: return function.call(a, b);
+        default: return function.call(a, b, c);
+      }
+    } catch (RuntimeError error) {
+      if (error.token == null) throw new RuntimeError(expr.paren, error.getMessage(), error.trace);
+      throw error;
+    }
   }
 
   @Override
@@ -310,7 +426,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Object visit(Expr.Super expr) {
-    Integer distance = locals.get(expr);
+    int distance = expr.depth;
     LoxClass superclass = (LoxClass) env.getAt("super", distance);
 
     LoxInstance object = (LoxInstance) env.getAt("this", distance - 1);
@@ -346,6 +462,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Object visit(Expr.Variable expr) {
+    callStack.line = expr.name.line;
     return lookupVariable(expr.name, expr);
   }
 
@@ -363,13 +480,17 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   }
 
   void resolve(Expr expr, int depth) {
-    locals.put(expr, depth);
+    expr.depth = depth;
+  }
+
+  /** Returns resolved depth of the expression or null if it refers to a global variable */
+  Integer getDepth(Expr expr) {
+    return (expr.depth < 0) ? null : expr.depth;
   }
 
   private Object lookupVariable(Token name, Expr expr) {
-    Integer distance = locals.get(expr);
-    if (distance != null) {
-      return env.getAt(name, distance);
+    if (expr.depth >= 0) {
+      return env.getAt(name, expr.depth);
     } else {
       return globals.get(name);
     }
@@ -381,10 +502,14 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   }
 
   /** Converts object into string */
-  private String stringify(Object value) {
+  static String stringify(Object value) {
     if (value == null) return "nil";
+    if (value instanceof Double && OutputSink.isSmallInteger((Double) value) &&
+        !value.equals(-0.0)) {
+      return Integer.toString((int) (double) (Double) value);
+    }
     String val = value.toString();
-    if (isNumber(value) && val.endsWith(".0")) {
+    if (value instanceof Double && val.endsWith(".0")) {
       return val.substring(0, val.length() - 2);
     }
     return val;
@@ -0,0 +1,263 @@
+package com.github.sadikovi;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+/**
+ * Java method exposed to Lox as a native function, see `Interpreter.defineNative`.
+ *
+ * The method handle is adapted once at bind time to take and return Lox values (Object), numbers
+ * are converted from and to double, booleans and strings are checked. Supported parameter types
+ * are double, int and long (the number must be an integer in range of the type), boolean, String
+ * and Object, return type can also be float or void. Object return values are checked on every
+ * call: Java numbers are converted to double, characters and char sequences to strings, values
+ * that are not Lox values, e.g. collections, fail with a runtime error. Arity is fixed when the
+ * function is bound, functions with up to MAX_FAST_ARITY parameters are called by the interpreter
+ * directly with evaluated arguments, without creating an argument list.
+ */
+class JavaFunction implements LoxCallable {
+  static final int MAX_FAST_ARITY = 3;
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+  private static final MethodHandle TO_DOUBLE;
+  private static final MethodHandle TO_INT;
+  private static final MethodHandle TO_LONG;
+  private static final MethodHandle TO_BOOLEAN;
+  private static final MethodHandle TO_STRING;
+  private static final MethodHandle FROM_NUMBER;
+  private static final MethodHandle FROM_OBJECT;
+
+  static {
+    try {
+      TO_DOUBLE = LOOKUP.findStatic(JavaFunction.class, "toDouble",
+        MethodType.methodType(double.class, Object.class));
+      TO_INT = LOOKUP.findStatic(JavaFunction.class, "toInt",
+        MethodType.methodType(int.class, Object.class));
+      TO_LONG = LOOKUP.findStatic(JavaFunction.class, "toLong",
+        MethodType.methodType(long.class, Object.class));
+      TO_BOOLEAN = LOOKUP.findStatic(JavaFunction.class, "toBoolean",
+        MethodType.methodType(boolean.class, Object.class));
+      TO_STRING = LOOKUP.findStatic(JavaFunction.class, "toStr",
+        MethodType.methodType(String.class, Object.class));
+      FROM_NUMBER = LOOKUP.findStatic(JavaFunction.class, "fromNumber",
+        MethodType.methodType(Object.class, double.class));
+      FROM_OBJECT = LOOKUP.findStatic(JavaFunction.class, "fromObject",
+        MethodType.methodType(Object.class, String.class, Object.class));
+    } catch (ReflectiveOperationException err) {
+      throw new ExceptionInInitializerError(err);
+    }
+  }
+
+  private final String name;
+  private final int arity;
+  private final MethodHandle handle; // (Object, ...) -> Object
+
+  private JavaFunction(String name, MethodHandle target) {
+    this.name = name;
+    this.arity = target.type().parameterCount();
+    this.handle = adapt(target);
+  }
+
+  /** Binds method handle, throws IllegalArgumentException if its type is not supported */
+  static JavaFunction of(String name, MethodHandle handle) {
+    if (handle.isVarargsCollector()) {
+      throw new IllegalArgumentException("Variable arity method " + name + " is not supported");
+    }
+    return new JavaFunction(name, handle);
+  }
+
+  /** Binds public static method of the class, method name must not be overloaded */
+  static JavaFunction ofStatic(String name, Class<?> owner, String method) {
+    Method m = find(owner, method, true);
+    try {
+      return of(name, LOOKUP.unreflect(m));
+    } catch (IllegalAccessException err) {
+      throw new IllegalArgumentException("Cannot access " + m, err);
+    }
+  }
+
+  /** Binds public instance method of the receiver, method name must not be overloaded */
+  static JavaFunction ofMethod(String name, Object receiver, String method) {
+    Method m = find(receiver.getClass(), method, false);
+    try {
+      return of(name, LOOKUP.unreflect(m).bindTo(receiver));
+    } catch (IllegalAccessException err) {
+      throw new IllegalArgumentException("Cannot access " + m, err);
+    }
+  }
+
+  private static Method find(Class<?> owner, String method, boolean isStatic) {
+    Method found = null;
+    for (Method m : owner.getMethods()) {
+      if (!m.getName().equals(method) || Modifier.isStatic(m.getModifiers()) != isStatic) continue;
+      if (found != null) {
+        throw new IllegalArgumentException("Method " + owner.getName() + "." + method +
+          " is overloaded, bind a method handle instead");
+      }
+      found = m;
+    }
+    if (found == null) {
+      throw new IllegalArgumentException("No public " + (isStatic ? "static " : "") +
+        "method " + owner.getName() + "." + method);
+    }
+    return found;
+  }
+
+  /** Converts parameters and return value of the target to Lox values */
+  private MethodHandle adapt(MethodHandle target) {
+    MethodType type = target.type();
+    MethodHandle[] filters = new MethodHandle[type.parameterCount()];
+    for (int i = 0; i < filters.length; i++) {
+      Class<?> param = type.parameterType(i);
+      if (param == double.class) {
+        filters[i] = TO_DOUBLE;
+      } else if (param == int.class) {
+        filters[i] = TO_INT;
+      } else if (param == long.class) {
+        filters[i] = TO_LONG;
+      } else if (param == boolean.class) {
+        filters[i] = TO_BOOLEAN;
+      } else if (param == String.class) {
+        filters[i] = TO_STRING;
+      } else if (param == Object.class) {
+        filters[i] = null;
+      } else {
+        throw new IllegalArgumentException("Parameter type " + param.getName() + " of " + name +
+          " is not supported");
+      }
+    }
+    MethodHandle adapted = MethodHandles.filterArguments(target, 0, filters);
+
+    Class<?> ret = type.returnType();
+    if (ret == double.class || ret == int.class || ret == long.class || ret == float.class) {
+      adapted = MethodHandles.filterReturnValue(
+        MethodHandles.explicitCastArguments(adapted, adapted.type().changeReturnType(double.class)),
+        FROM_NUMBER);
+    } else if (ret == void.class || ret == boolean.class || ret == String.class) {
+      // void returns nil, booleans are boxed
+    } else if (ret == Object.class) {
+      adapted = MethodHandles.filterReturnValue(adapted,
+        MethodHandles.insertArguments(FROM_OBJECT, 0, name));
+    } else {
+      throw new IllegalArgumentException("Return type " + ret.getName() + " of " + name +
+        " is not supported");
+    }
+    return adapted.asType(MethodType.genericMethodType(arity));
+  }
+
+  private static double toDouble(Object value) {
+    if (value instanceof Double) return (Double) value;
+    throw new RuntimeError(null, "Expected a number");
+  }
+
+  private static int toInt(Object value) {
+    double number = toDouble(value);
+    if ((int) number != number) throw new RuntimeError(null, "Expected an integer in int range");
+    return (int) number;
+  }
+
+  private static long toLong(Object value) {
+    double number = toDouble(value);
+    // casts saturate, 2^63 would become Long.MAX_VALUE that compares equal to it as double
+    if (number < -0x1p63 || number >= 0x1p63 || (long) number != number) {
+      throw new RuntimeError(null, "Expected an integer in long range");
+    }
+    return (long) number;
+  }
+
+  private static boolean toBoolean(Object value) {
+    if (value instanceof Boolean) return (Boolean) value;
+    throw new RuntimeError(null, "Expected a boolean");
+  }
+
+  private static String toStr(Object value) {
+    if (value instanceof String) return (String) value;
+    throw new RuntimeError(null, "Expected a string");
+  }
+
+  private static Object fromNumber(double value) {
+    return value;
+  }
+
+  /** Returns Lox value of the object returned by the function */
+  private static Object fromObject(String name, Object value) {
+    if (value == null || value instanceof Double || value instanceof String ||
+        value instanceof Boolean || value instanceof LoxCallable || value instanceof LoxGetter) {
+      return value;
+    }
+    if (value instanceof Number) return ((Number) value).doubleValue();
+    if (value instanceof Character || value instanceof CharSequence) return value.toString();
+    throw new RuntimeError(null, "Native function '" + name + "' returned unsupported value of " +
+      "type " + value.getClass().getName());
+  }
+
+  @Override
+  public int arity() {
+    return arity;
+  }
+
+  @Override
+  public Object call(Interpreter interpreter, List<Object> arguments) {
+    try {
+      switch (arity) {
+        case 0: return (Object) handle.invokeExact();
+        case 1: return (Object) handle.invokeExact(arguments.get(0));
+        case 2: return (Object) handle.invokeExact(arguments.get(0), arguments.get(1));
+        case 3:
+          return (Object) handle.invokeExact(arguments.get(0), arguments.get(1), arguments.get(2));
+        default: return handle.invokeWithArguments(arguments);
+      }
+    } catch (Throwable err) {
+      throw rethrow(err);
+    }
+  }
+
+  /** Calls function without arguments, see MAX_FAST_ARITY */
+  Object call() {
+    try {
+      return (Object) handle.invokeExact();
+    } catch (Throwable err) {
+      throw rethrow(err);
+    }
+  }
+
+  Object call(Object a) {
+    try {
+      return (Object) handle.invokeExact(a);
+    } catch (Throwable err) {
+      throw rethrow(err);
+    }
+  }
+
+  Object call(Object a, Object b) {
+    try {
+      return (Object) handle.invokeExact(a, b);
+    } catch (Throwable err) {
+      throw rethrow(err);
+    }
+  }
+
+  Object call(Object a, Object b, Object c) {
+    try {
+      return (Object) handle.invokeExact(a, b, c);
+    } catch (Throwable err) {
+      throw rethrow(err);
+    }
+  }
+
+  /** Rethrows Lox and JVM errors, other Java exceptions become Lox runtime errors */
+  private RuntimeException rethrow(Throwable err) {
+    if (err instanceof RuntimeError) throw (RuntimeError) err;
+    if (err instanceof Error) throw (Error) err;
+    throw new RuntimeError(null, "Native function '" + name + "' failed: " + err);
+  }
+
+  @Override
+  public String toString() {
+    return "<native fn>";
+  }
+}
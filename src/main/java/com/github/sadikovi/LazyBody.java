@@ -0,0 +1,72 @@
+package com.github.sadikovi;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Function body that is only brace-matched by the parser and parsed on first access, e.g. when
+ * the function is called for the first time. Resolution of the body is deferred until then.
+ */
+class LazyBody extends AbstractList<Stmt> {
+  /** Resolves statements of the body once they are parsed, see Resolver */
+  interface Resolution {
+    /** Returns false if resolution errors were reported */
+    boolean resolve(List<Stmt> statements);
+  }
+
+  private final TokenBuffer tokens;
+  private final int start; // index of the first token after "{"
+  private final int end; // index of the closing "}"
+  private final Token name;
+  private Resolution resolution;
+  private List<Stmt> statements;
+  private boolean failed; // body has errors that have been reported
+
+  LazyBody(TokenBuffer tokens, int start, int end, Token name) {
+    this.tokens = tokens;
+    this.start = start;
+    this.end = end;
+    this.name = name;
+  }
+
+  /** Returns true if body has been parsed */
+  public boolean isLoaded() {
+    return statements != null;
+  }
+
+  /** Sets resolution that is applied when body is parsed */
+  public void setResolution(Resolution resolution) {
+    this.resolution = resolution;
+  }
+
+  /**
+   * Parses and resolves body, throws runtime error if the body has syntax or resolution errors.
+   * Errors are reported once, subsequent calls fail without parsing the body again.
+   */
+  private List<Stmt> load() {
+    if (statements != null) return statements;
+
+    if (!failed) {
+      Parser parser = new Parser(tokens.stream(start, end));
+      List<Stmt> body = parser.parse();
+      if (!parser.hadError() && (resolution == null || resolution.resolve(body))) {
+        statements = body;
+        resolution = null;
+        return statements;
+      }
+      failed = true;
+      resolution = null;
+    }
+    throw new RuntimeError(name, "Function '" + name.lexeme + "' has errors");
+  }
+
+  @Override
+  public Stmt get(int index) {
+    return load().get(index);
+  }
+
+  @Override
+  public int size() {
+    return load().size();
+  }
+}
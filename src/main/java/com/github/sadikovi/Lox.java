@@ -3,42 +3,337 @@ package com.github.sadikovi;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Lox programming language entry point.
  */
 public class Lox {
+  private static final long PROFILE_INTERVAL_NANOS = 1000000L;
+  // Java stack reserved for every nested Lox call. Measured with -Xint, a call of a function with
+  // a few nested blocks and loops takes up to 4.5 KB, the JIT-compiled path takes less than 1.5 KB.
+  // Bodies with deeper nesting can still exhaust the stack before the depth limit, such calls fail
+  // with a stack overflow error as well, see LoxFunction.
+  private static final long STACK_BYTES_PER_CALL = 8192L;
+  private static final long MIN_STACK_BYTES = 16L << 20;
+
   private static Interpreter interpreter = new Interpreter();
   private static boolean hadError = false;
   private static boolean hadRuntimeError = false;
+  private static int errorCount = 0;
+  // Errors of the current thread are collected instead of printed when set, see `deferErrors`
+  private static final ThreadLocal<DeferredErrors> deferredErrors =
+    new ThreadLocal<DeferredErrors>();
+
+  /** Errors collected by `deferErrors`, keeps collection of the enclosing call if nested */
+  private static class DeferredErrors extends ArrayList<String> {
+    final DeferredErrors outer;
+
+    DeferredErrors(DeferredErrors outer) {
+      this.outer = outer;
+    }
+  }
+
+  private static boolean parallel = false; // parse source files on all cores
+  private static boolean lazy = false; // parse function bodies on first call
+  private static boolean dumpTokens = false; // print scanned tokens
+  private static boolean dumpAst = false; // print parsed syntax tree
+  private static Stats stats = new Stats(false);
+  private static Profiler profiler = null; // samples Lox call stack during evaluation
+  private static boolean metrics = false; // export runtime counters, see Metrics
+  private static boolean snapshot = false; // write image of globals after running the script
+  private static String prelude = null; // script or image loaded before running the program
+  private static int daemonPort = -1; // serve scripts on the loopback port, see Daemon
+  private static int connectPort = -1; // run script on the daemon listening on the port
 
   public static void main(String[] args) throws IOException {
-    if (args.length > 1) {
-      System.out.println("Usage: jlox [script]");
-      System.exit(64);
-    } else if (args.length == 1) {
-      runFile(args[0]);
+    boolean compile = false;
+    String path = null;
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if (arg.equals("--compile")) {
+        compile = true;
+      } else if (arg.equals("--snapshot")) {
+        snapshot = true;
+      } else if (arg.equals("--prelude") && i + 1 < args.length) {
+        prelude = args[++i];
+      } else if (arg.equals("--daemon") && i + 1 < args.length) {
+        daemonPort = port(args[++i]);
+      } else if (arg.equals("--connect") && i + 1 < args.length) {
+        connectPort = port(args[++i]);
+      } else if (arg.equals("--parallel")) {
+        parallel = true;
+      } else if (arg.equals("--lazy")) {
+        lazy = true;
+      } else if (arg.equals("--dump-tokens")) {
+        dumpTokens = true;
+      } else if (arg.equals("--dump-ast")) {
+        dumpAst = true;
+      } else if (arg.equals("--stats")) {
+        stats = new Stats(true);
+      } else if (arg.equals("--metrics")) {
+        metrics = true;
+      } else if (arg.equals("--profile")) {
+        profiler = new Profiler(interpreter.callStack, PROFILE_INTERVAL_NANOS);
+      } else if (arg.equals("--max-depth") && i + 1 < args.length) {
+        try {
+          interpreter.setMaxDepth(Integer.parseInt(args[++i]));
+        } catch (IllegalArgumentException err) {
+          usage();
+        }
+      } else if (arg.equals("--max-steps") && i + 1 < args.length) {
+        try {
+          interpreter.budget.setMaxSteps(Long.parseLong(args[++i]));
+        } catch (IllegalArgumentException err) {
+          usage();
+        }
+      } else if (arg.equals("--timeout") && i + 1 < args.length) {
+        try {
+          interpreter.budget.setTimeoutMillis(Long.parseLong(args[++i]));
+        } catch (IllegalArgumentException err) {
+          usage();
+        }
+      } else if (arg.equals("--max-allocations") && i + 1 < args.length) {
+        try {
+          interpreter.budget.setMaxAllocations(Long.parseLong(args[++i]));
+        } catch (IllegalArgumentException err) {
+          usage();
+        }
+      } else if (path == null && !arg.startsWith("--")) {
+        path = arg;
+      } else {
+        usage();
+      }
+    }
+
+    if (metrics) Metrics.register();
+
+    if ((compile || snapshot) && path == null) usage();
+    if (daemonPort >= 0) {
+      serve();
+    } else if (connectPort >= 0) {
+      System.exit(connect(path));
     } else {
-      runPrompt();
+      run(compile, path);
+    }
+  }
+
+  private static void usage() {
+    System.out.println("Usage: jlox [--compile] [--snapshot] [--prelude FILE] [--parallel] " +
+      "[--lazy] [--dump-tokens] [--dump-ast] [--stats] [--profile] [--metrics] [--max-depth N] " +
+      "[--max-steps N] [--timeout MS] [--max-allocations N] [--daemon PORT] [--connect PORT] " +
+      "[script]");
+    System.exit(64);
+  }
+
+  private static int port(String value) {
+    try {
+      int port = Integer.parseInt(value);
+      if (port >= 0 && port <= 65535) return port;
+    } catch (NumberFormatException err) {
+      // reported as usage error below
+    }
+    usage();
+    return -1;
+  }
+
+  /** Serves scripts of the working directory on a loopback port with one worker per core */
+  private static void serve() throws IOException {
+    ByteBuffer buffer = (prelude == null) ? null : map(Paths.get(prelude));
+    new Daemon(daemonPort, Runtime.getRuntime().availableProcessors(), stackSize(), interpreter,
+      buffer, Paths.get("")).serve();
+  }
+
+  /** Runs script file or standard input on the daemon and returns exit status */
+  private static int connect(String path) throws IOException {
+    if (path != null) {
+      return Daemon.connect(connectPort, "run " + Paths.get(path).toAbsolutePath());
+    }
+    StringBuilder source = new StringBuilder("eval\n");
+    BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+    char[] chunk = new char[8192];
+    int read;
+    while ((read = reader.read(chunk)) > 0) {
+      source.append(chunk, 0, read);
+    }
+    return Daemon.connect(connectPort, source.toString());
+  }
+
+  /** Returns Java stack size for the maximum call depth of the interpreter */
+  private static long stackSize() {
+    return stackSize(interpreter.maxDepth);
+  }
+
+  /** Returns Java stack size for the maximum call depth, at most 1 GB, see Interpreter.MAX_DEPTH */
+  static long stackSize(int maxDepth) {
+    return Math.max(MIN_STACK_BYTES, maxDepth * STACK_BYTES_PER_CALL);
+  }
+
+  /**
+   * Runs the program on a thread with the Java stack sized for the maximum call depth of the
+   * interpreter, so recursion is bounded by `--max-depth` rather than by the main thread stack.
+   */
+  private static void run(final boolean compile, final String path) throws IOException {
+    final Throwable[] failure = new Throwable[1];
+    Thread thread = new Thread(null, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          if (prelude != null) loadPrelude(prelude);
+          if (compile) {
+            compileFile(path);
+          } else if (snapshot) {
+            snapshotFile(path);
+          } else if (path != null) {
+            runFile(path);
+          } else {
+            runPrompt();
+          }
+        } catch (Throwable err) {
+          failure[0] = err;
+        }
+      }
+    }, "lox-main", stackSize());
+    try {
+      thread.start();
+    } catch (OutOfMemoryError err) {
+      System.err.println("Cannot start interpreter thread with " + (stackSize() >> 20) +
+        " MB stack, use a lower --max-depth: " + err.getMessage());
+      System.exit(70);
+    }
+    try {
+      thread.join();
+    } catch (InterruptedException err) {
+      Thread.currentThread().interrupt();
+    }
+    if (failure[0] instanceof IOException) throw (IOException) failure[0];
+    if (failure[0] != null) {
+      // Exit status of the JVM does not reflect failures of other threads
+      failure[0].printStackTrace();
+      System.exit(70);
     }
   }
 
-  /** Executes a source file */
+  /** Executes a source file or a compiled file, see AstFormat */
   private static void runFile(String path) throws IOException {
-    byte[] bytes = Files.readAllBytes(Paths.get(path));
-    run(new String(bytes, Charset.defaultCharset()), false);
+    executeFile(path);
+    stats.print(System.err);
+    writeProfile(path + ".folded");
+    if (metrics) Metrics.writePrometheus(System.err);
     if (hadError) System.exit(64);
     if (hadRuntimeError) System.exit(70);
   }
 
+  /** Evaluates a source file or a compiled file, errors are reported but do not exit */
+  private static void executeFile(String path) throws IOException {
+    ByteBuffer buffer = map(Paths.get(path));
+    if (AstFormat.hasMagic(buffer)) {
+      stats.start();
+      List<Stmt> statements;
+      try {
+        statements = new AstReader(buffer, interpreter).read();
+      } catch (AstReader.FormatError err) {
+        System.err.println("Cannot read " + path + ": " + err.getMessage());
+        System.exit(65);
+        return;
+      }
+      stats.stop(Stats.Phase.LOAD);
+      stats.addNodes(statements);
+      if (dumpAst) printAst(statements);
+      evaluate(statements, false);
+    } else if (parallel) {
+      stats.start();
+      String source = Charset.defaultCharset().decode(buffer).toString();
+      List<Stmt> statements = new ParallelParser().parse(source);
+      stats.stop(Stats.Phase.PARSE);
+      execute(statements, false);
+    } else {
+      execute(parse(new Scanner(new ByteBufferReader(buffer, Charset.defaultCharset()))), false);
+    }
+  }
+
+  /**
+   * Scans, parses and resolves a source file and writes the result next to it with ".loxc"
+   * extension. The compiled file is executed with `jlox script.loxc`.
+   */
+  private static void compileFile(String path) throws IOException {
+    ByteBuffer buffer = map(Paths.get(path));
+    Scanner scanner = new Scanner(new ByteBufferReader(buffer, Charset.defaultCharset()));
+    List<Stmt> statements = new Parser(scanner.stream()).parse();
+    if (hadError) System.exit(64);
+
+    new Resolver(interpreter).resolve(statements);
+    if (hadError) System.exit(64);
+
+    String output = path.endsWith(".lox") ? path + "c" : path + ".loxc";
+    Files.write(Paths.get(output), new AstWriter(interpreter).write(statements));
+    System.out.println("Compiled " + path + " into " + output);
+  }
+
+  /**
+   * Runs a script and writes image of the resulting globals next to it with ".loxi" extension.
+   * The image is loaded with `jlox --prelude script.loxi`, see Snapshot.
+   */
+  private static void snapshotFile(String path) throws IOException {
+    executeFile(path);
+    if (hadError) System.exit(64);
+    if (hadRuntimeError) System.exit(70);
+    String output = path.endsWith(".lox") ? path + "i" : path + ".loxi";
+    try {
+      Files.write(Paths.get(output), Snapshot.write(interpreter));
+    } catch (IllegalArgumentException err) {
+      System.err.println(err.getMessage());
+      System.exit(65);
+    } catch (RuntimeError err) {
+      // function bodies that were never called are parsed to be written, see `--lazy`
+      System.err.println(err.getMessage());
+      System.exit(hadError ? 64 : 70);
+    }
+    System.out.println("Wrote image of " + path + " into " + output);
+  }
+
+  /** Loads image written with `--snapshot` or runs a script before the program */
+  private static void loadPrelude(String path) throws IOException {
+    ByteBuffer buffer = map(Paths.get(path));
+    if (!Snapshot.hasMagic(buffer)) {
+      executeFile(path);
+      if (hadError) System.exit(64);
+      if (hadRuntimeError) System.exit(70);
+      return;
+    }
+    stats.start();
+    try {
+      Snapshot.read(buffer, interpreter);
+    } catch (AstReader.FormatError err) {
+      System.err.println("Cannot read " + path + ": " + err.getMessage());
+      System.exit(65);
+    }
+    stats.stop(Stats.Phase.LOAD);
+  }
+
+  /** Maps file into memory in read-only mode */
+  private static ByteBuffer map(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
   /** Runs REPL */
   private static void runPrompt() throws IOException {
     InputStreamReader input = new InputStreamReader(System.in);
     BufferedReader reader = new BufferedReader(input);
+    Retention retention = stats.isEnabled() ? interpreter.trackRetention() : null;
+    // Keeps declarations of the loaded file between `:load` commands
+    IncrementalParser loader = new IncrementalParser(interpreter);
 
     while (true) {
       System.out.print("> ");
@@ -46,47 +341,127 @@ public class Lox {
       if (line == null) {
         // Ctrl-D or EOL
         System.out.println("Bye!");
+        writeProfile("repl.folded");
+        if (metrics) Metrics.writePrometheus(System.err);
         break;
       }
-      run(line, true);
+      if (line.startsWith(":load ")) {
+        load(loader, line.substring(6).trim());
+      } else {
+        execute(parse(new Scanner(line)), true);
+      }
       hadError = false;
+      if (stats.isEnabled()) {
+        stats.print(System.err);
+        System.err.println("retained scripts: " + retention.scripts() +
+          ", nodes: " + retention.nodes());
+        stats = new Stats(true);
+      }
     }
   }
 
-  /** Runs command */
-  private static void run(String command, boolean printExpressions) {
-    Scanner scanner = new Scanner(command);
-    List<Token> tokens = scanner.getTokens();
+  /**
+   * Evaluates a source file in the REPL. Declarations that did not change since the previous load
+   * are not parsed again, the file is not evaluated if any declaration has errors.
+   */
+  private static void load(IncrementalParser loader, String path) {
+    String source;
+    try {
+      source = new String(Files.readAllBytes(Paths.get(path)), Charset.defaultCharset());
+    } catch (IOException err) {
+      System.err.println("Cannot read " + path + ": " + err.getMessage());
+      return;
+    }
+    stats.start();
+    List<Stmt> statements = loader.parse(source);
+    stats.stop(Stats.Phase.PARSE);
+    if (loader.hadError()) return;
+    stats.addNodes(statements);
+    if (dumpAst) printAst(statements);
+    evaluate(statements, false);
+    System.err.println("Loaded " + path + ", parsed " + loader.parsed() + " and reused " +
+      loader.reused() + " declarations");
+  }
 
-    System.out.println("\n== Tokens ==");
-    for (Token token : tokens) {
-      System.out.print("[" + token + "] ");
+  /**
+   * Parses source of the scanner.
+   * Tokens are scanned while parsing unless they are needed separately, i.e. for lazy function
+   * bodies, `--dump-tokens` or `--stats`.
+   */
+  private static List<Stmt> parse(Scanner scanner) {
+    if (!lazy && !dumpTokens && !stats.isEnabled()) {
+      // scanning is included into parse phase
+      stats.start();
+      List<Stmt> statements = new Parser(scanner.stream()).parse();
+      stats.stop(Stats.Phase.PARSE);
+      return statements;
     }
-    System.out.println();
 
-    System.out.println("\n== AST ==");
+    stats.start();
+    TokenBuffer tokens = scanner.scanTokens();
+    stats.stop(Stats.Phase.SCAN);
+    stats.addTokens(tokens.size());
+    if (dumpTokens) printTokens(tokens);
 
-    Parser parser = new Parser(tokens);
-    List<Stmt> statements = parser.parse();
+    stats.start();
+    List<Stmt> statements = new Parser(tokens, lazy).parse();
+    stats.stop(Stats.Phase.PARSE);
+    return statements;
+  }
 
+  /** Resolves and evaluates parsed statements */
+  private static void execute(List<Stmt> statements, boolean printExpressions) {
     if (hadError) return;
 
-    // If the tree was correct, print the expression
-    System.out.println(new AstPrinter().print(statements));
-
-    System.out.println("== Resolve ==");
+    stats.addNodes(statements);
+    if (dumpAst) printAst(statements);
 
+    stats.start();
     Resolver resolver = new Resolver(interpreter);
     resolver.resolve(statements);
+    stats.stop(Stats.Phase.RESOLVE);
 
     if (hadError) return;
 
-    System.out.println("== Eval ==");
+    evaluate(statements, printExpressions);
+  }
 
-    // Evaluate statements
-    // If `printExpressions` is true, convert all expressions into print statements, i.e.
-    // evaluates expressions and prints the result.
+  /**
+   * Evaluates resolved statements.
+   * If `printExpressions` is true, converts all expressions into print statements, i.e.
+   * evaluates expressions and prints the result.
+   */
+  private static void evaluate(List<Stmt> statements, boolean printExpressions) {
+    if (profiler != null) profiler.start();
+    stats.start();
     interpreter.interpret(statements, printExpressions);
+    stats.stop(Stats.Phase.EVAL);
+    if (profiler != null) profiler.stop();
+  }
+
+  /** Writes collapsed stacks into the file and prints hottest functions and lines */
+  private static void writeProfile(String path) throws IOException {
+    if (profiler == null) return;
+    try (Writer writer = Files.newBufferedWriter(Paths.get(path), Charset.defaultCharset())) {
+      profiler.writeCollapsed(writer);
+    }
+    profiler.printTop(System.err, 10);
+    System.err.println("Collapsed stacks are written into " + path);
+  }
+
+  private static void printTokens(TokenBuffer tokens) {
+    System.out.println("== Tokens ==");
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < tokens.size(); i++) {
+      if (i > 0) sb.append(' ');
+      sb.append('[').append(tokens.token(i)).append(']');
+    }
+    System.out.println(sb);
+  }
+
+  private static void printAst(List<Stmt> statements) {
+    System.out.println("== AST ==");
+    System.out.println(new AstPrinter().print(statements));
   }
 
   static void error(Token token, String message) {
@@ -97,14 +472,80 @@ public class Lox {
     report(line, "", message);
   }
 
-  static void runtimeError(RuntimeError error) {
-    System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
+  /** Reports runtime error, `line` is used if the error has no token */
+  static void runtimeError(RuntimeError error, int line) {
+    if (error.token != null) line = error.token.line;
+    String message = error.getMessage() + "\n[line " + line + "]";
+    if (error.trace != null) message += "\n" + error.trace;
+    List<String> errors = deferredErrors.get();
+    if (errors != null) {
+      errors.add(message);
+      return;
+    }
+    System.err.println(message);
     hadRuntimeError = true;
   }
 
   static void report(int line, String where, String message) {
-    System.err.println("[line " + line + "] Error" + where + ": " + message);
+    String error = "[line " + line + "] Error" + where + ": " + message;
+    List<String> errors = deferredErrors.get();
+    if (errors != null) {
+      errors.add(error);
+      return;
+    }
+    System.err.println(error);
     hadError = true;
+    errorCount++;
+  }
+
+  /**
+   * Starts collecting errors reported on the current thread, including runtime errors, instead of
+   * printing them. Calls can be nested, e.g. when a fork/join task runs inline in `join`; errors
+   * collected by the enclosing call are restored by the matching `collectErrors`.
+   */
+  static void deferErrors() {
+    deferredErrors.set(new DeferredErrors(deferredErrors.get()));
+  }
+
+  /** Returns number of errors collected on the current thread so far, see `deferErrors` */
+  static int deferredCount() {
+    return deferredErrors.get().size();
+  }
+
+  /**
+   * Stops collecting errors on the current thread and returns collected errors, collection of the
+   * enclosing `deferErrors` call continues if any.
+   */
+  static List<String> collectErrors() {
+    DeferredErrors errors = deferredErrors.get();
+    if (errors.outer != null) {
+      deferredErrors.set(errors.outer);
+    } else {
+      deferredErrors.remove();
+    }
+    return errors;
+  }
+
+  /**
+   * Reports errors collected on another thread, see `deferErrors`. Errors are collected again if
+   * the current thread defers errors.
+   */
+  static void reportDeferred(List<String> errors) {
+    List<String> deferred = deferredErrors.get();
+    if (deferred != null) {
+      deferred.addAll(errors);
+      return;
+    }
+    for (String error : errors) {
+      System.err.println(error);
+      hadError = true;
+      errorCount++;
+    }
+  }
+
+  /** Returns number of errors reported so far, including errors of previous runs */
+  static int errorCount() {
+    return errorCount;
   }
 
   static void report(Token token, String message) {
@@ -0,0 +1,139 @@
+package com.github.sadikovi;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Native dynamic array, created with `Array()`.
+ *
+ * var a = Array();
+ * a.push(1);
+ * a.set(0, a.get(0) + 1);
+ * print a.length;
+ * print a.pop();
+ *
+ * Elements are stored in a double[] while all of them are numbers, storage switches to Object[]
+ * once a value of another type is added.
+ */
+class LoxArray extends NativeInstance {
+  private static final int GET = 0;
+  private static final int SET = 1;
+  private static final int PUSH = 2;
+  private static final int POP = 3;
+
+  private double[] numbers = new double[8]; // null once elements are not all numbers
+  private Object[] values;
+  private int size = 0;
+
+  /** Returns element at the index */
+  public Object get(int index) {
+    return (numbers != null) ? (Object) numbers[index] : values[index];
+  }
+
+  /** Replaces element at the index */
+  public void set(int index, Object value) {
+    if (numbers != null) {
+      if (value instanceof Double) {
+        numbers[index] = (Double) value;
+        return;
+      }
+      toObjects();
+    }
+    values[index] = value;
+  }
+
+  /** Appends element to the end of the array */
+  public void push(Object value) {
+    if (numbers != null) {
+      if (value instanceof Double) {
+        if (size == numbers.length) numbers = Arrays.copyOf(numbers, size * 2);
+        numbers[size++] = (Double) value;
+        return;
+      }
+      toObjects();
+    }
+    if (size == values.length) values = Arrays.copyOf(values, size * 2);
+    values[size++] = value;
+  }
+
+  /** Removes and returns the last element */
+  public Object pop() {
+    if (size == 0) throw new RuntimeError(null, "Cannot pop from an empty array");
+    Object value = get(size - 1);
+    if (values != null) values[size - 1] = null;
+    size--;
+    return value;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** Switches storage to Object[] */
+  private void toObjects() {
+    values = new Object[Math.max(numbers.length, 8)];
+    for (int i = 0; i < size; i++) {
+      values[i] = numbers[i];
+    }
+    numbers = null;
+  }
+
+  @Override
+  protected int method(String name) {
+    switch (name) {
+      case "get": return GET;
+      case "set": return SET;
+      case "push": return PUSH;
+      case "pop": return POP;
+      default: return -1;
+    }
+  }
+
+  @Override
+  protected int methods() {
+    return 4;
+  }
+
+  @Override
+  protected int arity(int method) {
+    switch (method) {
+      case SET: return 2;
+      case POP: return 0;
+      default: return 1;
+    }
+  }
+
+  @Override
+  protected Object invoke(Interpreter interpreter, int method, List<Object> arguments) {
+    switch (method) {
+      case GET:
+        return get(index(arguments.get(0), size));
+      case SET:
+        set(index(arguments.get(0), size), arguments.get(1));
+        return arguments.get(1);
+      case PUSH:
+        push(arguments.get(0));
+        return null;
+      case POP:
+        return pop();
+      default:
+        throw new IllegalArgumentException("Unknown method " + method);
+    }
+  }
+
+  @Override
+  protected Object property(Token name) {
+    if (name.lexeme.equals("length")) return (double) size;
+    return super.property(name);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < size; i++) {
+      if (i > 0) sb.append(", ");
+      sb.append(Interpreter.stringify(get(i)));
+    }
+    return sb.append("]").toString();
+  }
+}
@@ -1,5 +1,6 @@
 package com.github.sadikovi;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -8,6 +9,8 @@ class LoxClass implements LoxCallable, LoxGetter {
   final LoxClass superclass;
   final Map<String, LoxFunction> methods;
   final Map<String, LoxFunction> classMethods;
+  // Methods found in this class or superclasses, classes are immutable once created
+  private final Map<String, LoxFunction> methodCache = new HashMap<String, LoxFunction>();
 
   LoxClass(
       String name,
@@ -30,12 +33,20 @@ class LoxClass implements LoxCallable, LoxGetter {
     return null;
   }
 
+  /** Returns method of this class or one of the superclasses, found methods are cached */
   public LoxFunction findMethod(String name) {
-    if (methods.containsKey(name)) {
-      return methods.get(name);
+    Metrics.methodLookups++;
+    LoxFunction method = methodCache.get(name);
+    if (method != null) {
+      Metrics.methodCacheHits++;
+      return method;
     }
-    if (superclass != null) {
-      return superclass.findMethod(name);
+    for (LoxClass klass = this; klass != null; klass = klass.superclass) {
+      method = klass.methods.get(name);
+      if (method != null) {
+        methodCache.put(name, method);
+        return method;
+      }
     }
     return null;
   }
@@ -58,11 +69,24 @@ class LoxClass implements LoxCallable, LoxGetter {
 
   @Override
   public Object call(Interpreter interpreter, List<Object> arguments) {
+    interpreter.budget.allocate(null);
+    LoxEvents.Instantiation event = null;
+    if (LoxEvents.isRecording()) {
+      event = new LoxEvents.Instantiation();
+      event.begin();
+    }
     LoxInstance instance = new LoxInstance(this);
     LoxFunction initializer = findMethod("init");
     if (initializer != null) {
       initializer.bind(instance).call(interpreter, arguments);
     }
+    if (event != null) {
+      event.end();
+      if (event.shouldCommit()) {
+        event.className = name;
+        event.commit();
+      }
+    }
     return instance;
   }
 
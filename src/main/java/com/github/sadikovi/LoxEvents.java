@@ -0,0 +1,72 @@
+package com.github.sadikovi;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JDK Flight Recorder events of Lox execution.
+ * Event classes are loaded and events are created only after Flight Recorder has been initialized,
+ * i.e. a recording was started, so runs without recording do not pay for events. Events are
+ * committed only if `shouldCommit` returns true. Thresholds can be changed in recording settings,
+ * e.g. `com.github.sadikovi.Call#threshold=10 ms`.
+ */
+final class LoxEvents {
+  private LoxEvents() { }
+
+  /** Returns true if events can be recorded, event classes must not be touched otherwise */
+  static boolean isRecording() {
+    return FlightRecorder.isInitialized();
+  }
+
+  @Name("com.github.sadikovi.Call")
+  @Label("Lox Function Call")
+  @Description("Lox function call that took longer than the threshold")
+  @Category("Lox")
+  @Threshold("1 ms")
+  @StackTrace(false)
+  static class Call extends Event {
+    @Label("Function")
+    String function;
+
+    @Label("Line")
+    int line;
+  }
+
+  @Name("com.github.sadikovi.Instantiation")
+  @Label("Lox Class Instantiation")
+  @Description("Instance creation including the initializer")
+  @Category("Lox")
+  @Threshold("0 ms")
+  @StackTrace(false)
+  static class Instantiation extends Event {
+    @Label("Class")
+    String className;
+  }
+
+  @Name("com.github.sadikovi.RuntimeError")
+  @Label("Lox Runtime Error")
+  @Category("Lox")
+  static class RuntimeError extends Event {
+    @Label("Message")
+    String message;
+
+    @Label("Line")
+    int line;
+  }
+
+  @Name("com.github.sadikovi.Phase")
+  @Label("Lox Phase")
+  @Description("Scan, parse, resolve or evaluation phase")
+  @Category("Lox")
+  @StackTrace(false)
+  static class Phase extends Event {
+    @Label("Phase")
+    String phase;
+  }
+}
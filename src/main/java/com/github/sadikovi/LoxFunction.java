@@ -58,11 +58,38 @@ class LoxFunction implements LoxCallable {
       }
     }
 
+    Metrics.calls++;
+    interpreter.budget.step(name);
+    CallStack stack = interpreter.callStack;
+    if (stack.depth() >= interpreter.maxDepth) {
+      throw new RuntimeError(name, "Stack overflow, maximum call depth is " + interpreter.maxDepth,
+        stack.trace(Interpreter.TRACE_FRAMES));
+    }
+    stack.push(isLambda() ? "<anonymous fn>" : name.lexeme);
+    LoxEvents.Call event = null;
+    if (LoxEvents.isRecording()) {
+      event = new LoxEvents.Call();
+      event.begin();
+    }
     try {
       interpreter.executeBlock(body, env);
     } catch (Interpreter.Return returnValue) {
       if (isInitializer) return closure.getAt("this", 0);
       return returnValue.value;
+    } catch (StackOverflowError error) {
+      // Java stack is exhausted before the depth limit, e.g. by deeply nested blocks in the bodies,
+      // the frame is still on the stack
+      throw new RuntimeError(name, "Stack overflow", stack.trace(Interpreter.TRACE_FRAMES));
+    } finally {
+      if (event != null) {
+        event.end();
+        if (event.shouldCommit()) {
+          event.function = stack.name(stack.depth() - 1);
+          event.line = stack.line;
+          event.commit();
+        }
+      }
+      stack.pop();
     }
 
     if (isInitializer) return closure.getAt("this", 0);
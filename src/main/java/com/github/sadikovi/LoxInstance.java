@@ -9,6 +9,7 @@ class LoxInstance implements LoxGetter {
 
   LoxInstance(LoxClass klass) {
     this.klass = klass;
+    Metrics.instances++;
   }
 
   @Override
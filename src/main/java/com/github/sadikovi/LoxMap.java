@@ -0,0 +1,223 @@
+package com.github.sadikovi;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Native hash map, created with `Map()`.
+ *
+ * var m = Map();
+ * m.set("a", 1);
+ * print m.get("a") + m.size;
+ * m.delete("a");
+ * m.forEach(fun (key, value) { print key; });
+ *
+ * Port of clox/table.c: open addressing with linear probing, capacity is a power of two and
+ * deleted entries are marked with tombstones that are dropped when the table grows. Keys are
+ * compared like `==` does, strings, numbers and booleans by value and instances by identity.
+ * Keys cannot be nil.
+ */
+class LoxMap extends NativeInstance {
+  private static final double MAX_LOAD_FACTOR = 0.75;
+  // Key of a deleted entry
+  private static final Object TOMBSTONE = new Object();
+
+  private static final int GET = 0;
+  private static final int SET = 1;
+  private static final int DELETE = 2;
+  private static final int HAS = 3;
+  private static final int KEYS = 4;
+  private static final int FOR_EACH = 5;
+
+  private Object[] keys = new Object[0]; // null for an empty entry
+  private Object[] values = new Object[0];
+  private int[] hashes = new int[0];
+  private int count = 0; // number of entries and tombstones
+  private int size = 0; // number of entries
+
+  /** Returns value for the key or null if there is no such key */
+  public Object get(Object key) {
+    if (size == 0) return null;
+    int index = findEntry(keys, hashes, key, hash(key));
+    return (keys[index] == null || keys[index] == TOMBSTONE) ? null : values[index];
+  }
+
+  /** Returns true if map contains the key */
+  public boolean has(Object key) {
+    if (size == 0) return false;
+    int index = findEntry(keys, hashes, key, hash(key));
+    return keys[index] != null && keys[index] != TOMBSTONE;
+  }
+
+  /** Sets value for the key, returns true if the key is new */
+  public boolean set(Object key, Object value) {
+    if (key == null) throw new RuntimeError(null, "Map key cannot be nil");
+    if (count + 1 > keys.length * MAX_LOAD_FACTOR) {
+      adjustCapacity(keys.length < 8 ? 8 : keys.length * 2);
+    }
+
+    int hash = hash(key);
+    int index = findEntry(keys, hashes, key, hash);
+    boolean isNewKey = keys[index] == null || keys[index] == TOMBSTONE;
+    if (keys[index] == null) count++;
+    if (isNewKey) size++;
+
+    keys[index] = key;
+    values[index] = value;
+    hashes[index] = hash;
+    return isNewKey;
+  }
+
+  /** Deletes the key, returns true if the key existed */
+  public boolean delete(Object key) {
+    if (size == 0) return false;
+    int index = findEntry(keys, hashes, key, hash(key));
+    if (keys[index] == null || keys[index] == TOMBSTONE) return false;
+
+    keys[index] = TOMBSTONE;
+    values[index] = null;
+    size--;
+    return true;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns index of the entry with the key, or the first tombstone on the probe sequence, or the
+   * empty entry that terminates the sequence.
+   */
+  private static int findEntry(Object[] keys, int[] hashes, Object key, int hash) {
+    int mask = keys.length - 1;
+    int index = hash & mask;
+    int tombstone = -1;
+
+    while (true) {
+      Object entry = keys[index];
+      if (entry == null) {
+        return (tombstone != -1) ? tombstone : index;
+      } else if (entry == TOMBSTONE) {
+        if (tombstone == -1) tombstone = index;
+      } else if (hashes[index] == hash && (entry == key || entry.equals(key))) {
+        return index;
+      }
+
+      index = (index + 1) & mask;
+    }
+  }
+
+  private void adjustCapacity(int capacity) {
+    Object[] newKeys = new Object[capacity];
+    Object[] newValues = new Object[capacity];
+    int[] newHashes = new int[capacity];
+
+    count = 0;
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] == null || keys[i] == TOMBSTONE) continue;
+
+      int index = findEntry(newKeys, newHashes, keys[i], hashes[i]);
+      newKeys[index] = keys[i];
+      newValues[index] = values[i];
+      newHashes[index] = hashes[i];
+      count++;
+    }
+
+    keys = newKeys;
+    values = newValues;
+    hashes = newHashes;
+  }
+
+  /** Spreads hash so that linear probing on the low bits works for sequential numbers */
+  private static int hash(Object key) {
+    int h = (key == null) ? 0 : key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  @Override
+  protected int method(String name) {
+    switch (name) {
+      case "get": return GET;
+      case "set": return SET;
+      case "delete": return DELETE;
+      case "has": return HAS;
+      case "keys": return KEYS;
+      case "forEach": return FOR_EACH;
+      default: return -1;
+    }
+  }
+
+  @Override
+  protected int methods() {
+    return 6;
+  }
+
+  @Override
+  protected int arity(int method) {
+    switch (method) {
+      case SET: return 2;
+      case KEYS: return 0;
+      default: return 1;
+    }
+  }
+
+  @Override
+  protected Object invoke(Interpreter interpreter, int method, List<Object> arguments) {
+    switch (method) {
+      case GET:
+        return get(arguments.get(0));
+      case SET:
+        set(arguments.get(0), arguments.get(1));
+        return arguments.get(1);
+      case DELETE:
+        return delete(arguments.get(0));
+      case HAS:
+        return has(arguments.get(0));
+      case KEYS: {
+        interpreter.budget.allocate(null);
+        LoxArray array = new LoxArray();
+        for (int i = 0; i < keys.length; i++) {
+          if (keys[i] != null && keys[i] != TOMBSTONE) array.push(keys[i]);
+        }
+        return array;
+      }
+      case FOR_EACH:
+        forEach(interpreter, arguments.get(0));
+        return null;
+      default:
+        throw new IllegalArgumentException("Unknown method " + method);
+    }
+  }
+
+  /** Calls function with key and value of every entry, entries added meanwhile may be skipped */
+  private void forEach(Interpreter interpreter, Object fn) {
+    if (!(fn instanceof LoxCallable) || ((LoxCallable) fn).arity() != 2) {
+      throw new RuntimeError(null, "Expected a function with key and value parameters");
+    }
+    Object[] keys = this.keys;
+    for (int i = 0; i < keys.length; i++) {
+      Object key = keys[i];
+      if (key == null || key == TOMBSTONE || key != this.keys[i]) continue;
+      ((LoxCallable) fn).call(interpreter, Arrays.asList(key, values[i]));
+    }
+  }
+
+  @Override
+  protected Object property(Token name) {
+    if (name.lexeme.equals("size")) return (double) size;
+    return super.property(name);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] == null || keys[i] == TOMBSTONE) continue;
+      if (sb.length() > 1) sb.append(", ");
+      sb.append(Interpreter.stringify(keys[i]));
+      sb.append(": ");
+      sb.append(Interpreter.stringify(values[i]));
+    }
+    return sb.append("}").toString();
+  }
+}
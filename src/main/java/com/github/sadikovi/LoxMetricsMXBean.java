@@ -0,0 +1,15 @@
+package com.github.sadikovi;
+
+/**
+ * Runtime counters of the interpreter exposed through JMX, see Metrics.
+ */
+public interface LoxMetricsMXBean {
+  long getCalls();
+  long getEnvironments();
+  long getInstances();
+  long getMethodLookups();
+  long getMethodCacheHits();
+  long getStringConcatenations();
+  long getControlFlowExceptions();
+  void reset();
+}
@@ -0,0 +1,82 @@
+package com.github.sadikovi;
+
+import java.util.List;
+
+/**
+ * Native string builder, created with `StringBuilder()`.
+ *
+ * var sb = StringBuilder();
+ * sb.append("line ").append(1).append("\n");
+ * print sb.length;
+ * print sb.toString();
+ * sb.clear();
+ *
+ * Values are formatted the same way as `print` and string concatenation format them, appending is
+ * amortized constant time unlike `+` that copies both strings.
+ */
+class LoxStringBuilder extends NativeInstance {
+  private static final int APPEND = 0;
+  private static final int CLEAR = 1;
+  private static final int TO_STRING = 2;
+
+  private final StringBuilder sb = new StringBuilder();
+
+  /** Appends formatted value, small integral numbers are appended without intermediate strings */
+  public void append(Object value) {
+    if (value instanceof String) {
+      sb.append((String) value);
+    } else if (value instanceof Double && OutputSink.isSmallInteger((Double) value) &&
+        !value.equals(-0.0)) {
+      sb.append((int) (double) (Double) value);
+    } else {
+      sb.append(Interpreter.stringify(value));
+    }
+  }
+
+  @Override
+  protected int method(String name) {
+    switch (name) {
+      case "append": return APPEND;
+      case "clear": return CLEAR;
+      case "toString": return TO_STRING;
+      default: return -1;
+    }
+  }
+
+  @Override
+  protected int methods() {
+    return 3;
+  }
+
+  @Override
+  protected int arity(int method) {
+    return (method == APPEND) ? 1 : 0;
+  }
+
+  @Override
+  protected Object invoke(Interpreter interpreter, int method, List<Object> arguments) {
+    switch (method) {
+      case APPEND:
+        append(arguments.get(0));
+        return this;
+      case CLEAR:
+        sb.setLength(0);
+        return this;
+      case TO_STRING:
+        return sb.toString();
+      default:
+        throw new IllegalArgumentException("Unknown method " + method);
+    }
+  }
+
+  @Override
+  protected Object property(Token name) {
+    if (name.lexeme.equals("length")) return (double) sb.length();
+    return super.property(name);
+  }
+
+  @Override
+  public String toString() {
+    return sb.toString();
+  }
+}
@@ -0,0 +1,105 @@
+package com.github.sadikovi;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Runtime counters of the interpreter, see `--metrics` flag.
+ * Counters are plain static fields incremented on the hot paths, they are not synchronized and are
+ * approximate when several interpreters run concurrently. Counters are registered as an MXBean
+ * under `OBJECT_NAME` and can be written in Prometheus text format.
+ */
+class Metrics implements LoxMetricsMXBean {
+  static final String OBJECT_NAME = "com.github.sadikovi:type=Lox";
+
+  static long calls = 0; // Lox function calls
+  static long environments = 0; // allocated environments
+  static long instances = 0; // allocated class instances
+  static long methodLookups = 0;
+  static long methodCacheHits = 0;
+  static long stringConcatenations = 0;
+  static long controlFlowExceptions = 0; // thrown break and return exceptions
+
+  private static Metrics registered = null;
+
+  /** Registers counters with the platform MBean server, repeated calls are no-op */
+  static synchronized void register() {
+    if (registered != null) return;
+    try {
+      Metrics metrics = new Metrics();
+      ManagementFactory.getPlatformMBeanServer()
+        .registerMBean(metrics, new ObjectName(OBJECT_NAME));
+      registered = metrics;
+    } catch (JMException err) {
+      throw new IllegalStateException("Failed to register " + OBJECT_NAME, err);
+    }
+  }
+
+  /** Writes counters in Prometheus text exposition format */
+  static void writePrometheus(PrintStream out) {
+    counter(out, "lox_calls_total", "Lox function calls", calls);
+    counter(out, "lox_environments_total", "Allocated environments", environments);
+    counter(out, "lox_instances_total", "Allocated class instances", instances);
+    counter(out, "lox_method_lookups_total", "Method lookups", methodLookups);
+    counter(out, "lox_method_cache_hits_total", "Method lookups served from cache",
+      methodCacheHits);
+    counter(out, "lox_string_concatenations_total", "String concatenations", stringConcatenations);
+    counter(out, "lox_control_flow_exceptions_total", "Exceptions thrown for break and return",
+      controlFlowExceptions);
+    out.flush();
+  }
+
+  private static void counter(PrintStream out, String name, String help, long value) {
+    out.println("# HELP " + name + " " + help);
+    out.println("# TYPE " + name + " counter");
+    out.println(name + " " + value);
+  }
+
+  @Override
+  public long getCalls() {
+    return calls;
+  }
+
+  @Override
+  public long getEnvironments() {
+    return environments;
+  }
+
+  @Override
+  public long getInstances() {
+    return instances;
+  }
+
+  @Override
+  public long getMethodLookups() {
+    return methodLookups;
+  }
+
+  @Override
+  public long getMethodCacheHits() {
+    return methodCacheHits;
+  }
+
+  @Override
+  public long getStringConcatenations() {
+    return stringConcatenations;
+  }
+
+  @Override
+  public long getControlFlowExceptions() {
+    return controlFlowExceptions;
+  }
+
+  @Override
+  public void reset() {
+    calls = 0;
+    environments = 0;
+    instances = 0;
+    methodLookups = 0;
+    methodCacheHits = 0;
+    stringConcatenations = 0;
+    controlFlowExceptions = 0;
+  }
+}
@@ -0,0 +1,61 @@
+package com.github.sadikovi;
+
+import java.util.List;
+
+/**
+ * Instance of a native class, e.g. Array.
+ * Methods are identified by index, they are bound to the instance on first access and cached, so
+ * repeated calls such as `array.push(x)` do not allocate. Errors are reported with RuntimeError
+ * without a token, see Natives.
+ */
+abstract class NativeInstance implements LoxGetter {
+  private LoxCallable[] bound;
+
+  /** Returns index of the method or -1 if there is no such method */
+  protected abstract int method(String name);
+
+  /** Returns number of method parameters */
+  protected abstract int arity(int method);
+
+  /** Calls method with arguments, number of arguments is already checked */
+  protected abstract Object invoke(Interpreter interpreter, int method, List<Object> arguments);
+
+  /** Returns number of methods, indexes are in [0, methods) */
+  protected abstract int methods();
+
+  /** Returns value of a property that is not a method */
+  protected Object property(Token name) {
+    throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'");
+  }
+
+  @Override
+  public Object get(Token name) {
+    final int method = method(name.lexeme);
+    if (method < 0) return property(name);
+    if (bound == null) bound = new LoxCallable[methods()];
+    if (bound[method] == null) {
+      bound[method] = new Natives.NativeFunction() {
+        @Override
+        public int arity() {
+          return NativeInstance.this.arity(method);
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+          return invoke(interpreter, method, arguments);
+        }
+      };
+    }
+    return bound[method];
+  }
+
+  /** Returns argument as an integer index in [0, size) or throws runtime error */
+  static int index(Object value, int size) {
+    if (!(value instanceof Double)) throw new RuntimeError(null, "Index must be a number");
+    double number = (Double) value;
+    if (number != Math.floor(number) || number < 0 || number >= size) {
+      throw new RuntimeError(null, "Index " + Interpreter.stringify(value) + " is out of bounds");
+    }
+    return (int) number;
+  }
+}
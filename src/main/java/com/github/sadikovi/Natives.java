@@ -0,0 +1,154 @@
+package com.github.sadikovi;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Native functions defined in the global environment.
+ * Natives report errors with RuntimeError without a token, the interpreter attaches the token of
+ * the call site, see `Interpreter.visit(Expr.Call)`.
+ */
+final class Natives {
+  private Natives() { }
+
+  // Class of instances returned by `bench`
+  private static final LoxClass BENCH_STATS = new LoxClass("BenchStats", null,
+    new HashMap<String, LoxFunction>(), new HashMap<String, LoxFunction>());
+
+  /** Base class of native functions */
+  abstract static class NativeFunction implements LoxCallable {
+    @Override
+    public String toString() {
+      return "<native fn>";
+    }
+  }
+
+  /** Constructor of a native class, e.g. `Array()` */
+  abstract static class NativeClass extends NativeFunction {
+    private final String name;
+
+    NativeClass(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String toString() {
+      return "<native class " + name + ">";
+    }
+  }
+
+  static void define(Environment globals) {
+    globals.define("Array", new NativeClass("Array") {
+      @Override
+      public int arity() {
+        return 0;
+      }
+
+      @Override
+      public Object call(Interpreter interpreter, List<Object> arguments) {
+        interpreter.budget.allocate(null);
+        return new LoxArray();
+      }
+    });
+
+    globals.define("Map", new NativeClass("Map") {
+      @Override
+      public int arity() {
+        return 0;
+      }
+
+      @Override
+      public Object call(Interpreter interpreter, List<Object> arguments) {
+        interpreter.budget.allocate(null);
+        return new LoxMap();
+      }
+    });
+
+    globals.define("StringBuilder", new NativeClass("StringBuilder") {
+      @Override
+      public int arity() {
+        return 0;
+      }
+
+      @Override
+      public Object call(Interpreter interpreter, List<Object> arguments) {
+        interpreter.budget.allocate(null);
+        return new LoxStringBuilder();
+      }
+    });
+
+    globals.define("clock", JavaFunction.ofStatic("clock", Natives.class, "clock"));
+    globals.define("nanoClock", JavaFunction.ofStatic("nanoClock", Natives.class, "nanoClock"));
+
+    // Calls function without arguments `iterations` times after a warmup and returns instance
+    // with min, median, mean and stddev of a call in nanoseconds
+    globals.define("bench", new NativeFunction() {
+      @Override
+      public int arity() {
+        return 2;
+      }
+
+      @Override
+      public Object call(Interpreter interpreter, List<Object> arguments) {
+        if (!(arguments.get(0) instanceof LoxCallable) ||
+            ((LoxCallable) arguments.get(0)).arity() != 0) {
+          throw new RuntimeError(null, "Expected a function without parameters");
+        }
+        if (!(arguments.get(1) instanceof Double) || (Double) arguments.get(1) < 1 ||
+            (Double) arguments.get(1) != Math.floor((Double) arguments.get(1))) {
+          throw new RuntimeError(null, "Expected a positive integer number of iterations");
+        }
+        return bench(interpreter, (LoxCallable) arguments.get(0),
+          (int) (double) (Double) arguments.get(1));
+      }
+    });
+  }
+
+  /** Returns current time in seconds */
+  public static double clock() {
+    return (double) System.currentTimeMillis() / 1000.0;
+  }
+
+  /** Returns value of the high-resolution timer in nanoseconds, only differences are meaningful */
+  public static long nanoClock() {
+    return System.nanoTime();
+  }
+
+  private static LoxInstance bench(Interpreter interpreter, LoxCallable fn, int iterations) {
+    List<Object> none = Arrays.asList();
+    int warmup = Math.max(1, iterations / 5);
+    for (int i = 0; i < warmup; i++) {
+      fn.call(interpreter, none);
+    }
+
+    long[] times = new long[iterations];
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      fn.call(interpreter, none);
+      times[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(times);
+
+    double sum = 0;
+    for (long time : times) {
+      sum += time;
+    }
+    double mean = sum / iterations;
+    double squares = 0;
+    for (long time : times) {
+      squares += (time - mean) * (time - mean);
+    }
+    double median = (iterations % 2 == 1) ? times[iterations / 2] :
+      (times[iterations / 2 - 1] + times[iterations / 2]) / 2.0;
+
+    LoxInstance stats = new LoxInstance(BENCH_STATS);
+    stats.fields.put("iterations", (double) iterations);
+    stats.fields.put("min", (double) times[0]);
+    stats.fields.put("max", (double) times[iterations - 1]);
+    stats.fields.put("median", median);
+    stats.fields.put("mean", mean);
+    stats.fields.put("stddev", (iterations > 1) ? Math.sqrt(squares / (iterations - 1)) : 0.0);
+    return stats;
+  }
+}
@@ -0,0 +1,207 @@
+package com.github.sadikovi;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Buffered output of `print` statements.
+ * Values are formatted directly into a character buffer that is written to the target when it is
+ * full or on `flush`. Interpreter flushes the sink when a program finishes or fails, embedders can
+ * redirect output with `Interpreter.setOutput`.
+ */
+abstract class OutputSink {
+  static final int BUFFER_SIZE = 64 * 1024;
+
+  private final char[] buffer;
+  private int position = 0;
+
+  OutputSink(int size) {
+    this.buffer = new char[size];
+  }
+
+  /** Returns sink that writes into standard output */
+  public static OutputSink stdout() {
+    return of(System.out);
+  }
+
+  /** Returns sink that writes into the print stream */
+  public static OutputSink of(PrintStream out) {
+    return of(new OutputStreamWriter(out, Charset.defaultCharset()));
+  }
+
+  /** Returns sink that writes into the writer, the writer is flushed on every flush */
+  public static OutputSink of(final Writer writer) {
+    return new OutputSink(BUFFER_SIZE) {
+      @Override
+      protected void write(char[] chars, int length) throws IOException {
+        writer.write(chars, 0, length);
+        writer.flush();
+      }
+    };
+  }
+
+  /**
+   * Returns sink that encodes output and writes it into the channel at its current position.
+   * Encoder state is kept between flushes, so a surrogate pair that is split by the buffer boundary
+   * is encoded once the low surrogate arrives. Call `close` after the last output to finish the
+   * encoding, the channel itself is not closed.
+   */
+  public static OutputSink of(final FileChannel channel, Charset charset) {
+    final CharsetEncoder encoder = charset.newEncoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE * 4);
+    // Characters of the flush followed by the characters that encoder has not consumed yet, i.e. a
+    // high surrogate at the end of the previous flush
+    final CharBuffer input = CharBuffer.allocate(BUFFER_SIZE + 1);
+    return new OutputSink(BUFFER_SIZE) {
+      @Override
+      protected void write(char[] chars, int length) throws IOException {
+        input.put(chars, 0, length);
+        input.flip();
+        encode(false);
+        input.compact();
+      }
+
+      @Override
+      protected void finish() throws IOException {
+        input.flip();
+        encode(true);
+        input.clear();
+        while (encoder.flush(bytes).isOverflow()) {
+          drain();
+        }
+        drain();
+        encoder.reset();
+      }
+
+      private void encode(boolean endOfInput) throws IOException {
+        while (encoder.encode(input, bytes, endOfInput).isOverflow()) {
+          drain();
+        }
+        drain();
+      }
+
+      private void drain() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+          channel.write(bytes);
+        }
+        bytes.clear();
+      }
+    };
+  }
+
+  /** Writes characters into the target */
+  protected abstract void write(char[] chars, int length) throws IOException;
+
+  /** Writes output that the target holds back until the end, e.g. an incomplete surrogate pair */
+  protected void finish() throws IOException { }
+
+  /** Prints value followed by a new line */
+  public void println(Object value) {
+    print(value);
+    append('\n');
+  }
+
+  /** Prints value, numbers and strings are copied into the buffer without intermediate strings */
+  public void print(Object value) {
+    if (value == null) {
+      append("nil");
+    } else if (value instanceof String) {
+      append((String) value);
+    } else if (value instanceof Double) {
+      append((double) (Double) value);
+    } else {
+      append(value.toString());
+    }
+  }
+
+  /** Writes buffered output into the target */
+  public void flush() {
+    if (position == 0) return;
+    try {
+      write(buffer, position);
+    } catch (IOException err) {
+      throw new UncheckedIOException(err);
+    } finally {
+      position = 0;
+    }
+  }
+
+  /** Writes buffered output and finishes the target, the sink should not be used afterwards */
+  public void close() {
+    flush();
+    try {
+      finish();
+    } catch (IOException err) {
+      throw new UncheckedIOException(err);
+    }
+  }
+
+  private void append(char c) {
+    if (position == buffer.length) flush();
+    buffer[position++] = c;
+  }
+
+  private void append(String value) {
+    int offset = 0;
+    int length = value.length();
+    while (offset < length) {
+      if (position == buffer.length) flush();
+      int count = Math.min(length - offset, buffer.length - position);
+      value.getChars(offset, offset + count, buffer, position);
+      position += count;
+      offset += count;
+    }
+  }
+
+  /**
+   * Formats number the same way as `Interpreter.stringify`.
+   * Integral numbers below 1e7 are written digit by digit, the rest use `Double.toString`.
+   */
+  private void append(double value) {
+    if (!isSmallInteger(value)) {
+      String val = Double.toString(value);
+      append(val.endsWith(".0") ? val.substring(0, val.length() - 2) : val);
+      return;
+    }
+
+    int n = (int) value;
+    // 8 characters are enough for the sign and 7 digits
+    if (buffer.length - position < 8) flush();
+    if (n < 0 || (n == 0 && 1 / value < 0)) {
+      buffer[position++] = '-';
+      n = -n;
+    }
+    int end = position + digits(n);
+    for (int i = end - 1; i >= position; i--) {
+      buffer[i] = (char) ('0' + n % 10);
+      n /= 10;
+    }
+    position = end;
+  }
+
+  /** Returns true if number is integral and `Double.toString` prints it without exponent */
+  static boolean isSmallInteger(double value) {
+    return value > -1e7 && value < 1e7 && value == (int) value;
+  }
+
+  private static int digits(int n) {
+    int count = 1;
+    while (n >= 10) {
+      n /= 10;
+      count++;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,83 @@
+package com.github.sadikovi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Scans and parses large sources on all cores.
+ *
+ * Source is split at top-level declaration boundaries (see DeclarationSplitter), consecutive
+ * declarations are grouped into batches of similar size that are scanned and parsed as separate
+ * tasks. Statements are joined in the source order, errors are reported in the same order as
+ * sequential parsing would report them. Statements must be resolved afterwards.
+ */
+class ParallelParser {
+  // Batches smaller than this are not worth a separate task
+  private static final int MIN_BATCH_SIZE = 64 * 1024;
+
+  /** Statements and errors of a parsed batch */
+  private static class Result {
+    final List<Stmt> statements;
+    final List<String> errors;
+
+    Result(List<Stmt> statements, List<String> errors) {
+      this.statements = statements;
+      this.errors = errors;
+    }
+  }
+
+  private final ForkJoinPool pool;
+
+  ParallelParser() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  ParallelParser(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  public List<Stmt> parse(String source) {
+    int batchSize = Math.max(MIN_BATCH_SIZE, source.length() / (pool.getParallelism() * 4));
+
+    List<ForkJoinTask<Result>> tasks = new ArrayList<ForkJoinTask<Result>>();
+    List<DeclarationSplitter.Chunk> chunks = DeclarationSplitter.split(source);
+    int i = 0;
+    while (i < chunks.size()) {
+      DeclarationSplitter.Chunk first = chunks.get(i);
+      int end = first.offset;
+      while (i < chunks.size() && end - first.offset < batchSize) {
+        DeclarationSplitter.Chunk chunk = chunks.get(i++);
+        end = chunk.offset + chunk.source.length();
+      }
+      tasks.add(pool.submit(parseTask(source.substring(first.offset, end), first.line)));
+    }
+
+    List<Stmt> statements = new ArrayList<Stmt>();
+    for (ForkJoinTask<Result> task : tasks) {
+      Result result = task.join();
+      Lox.reportDeferred(result.errors);
+      statements.addAll(result.statements);
+    }
+    return statements;
+  }
+
+  private static Callable<Result> parseTask(final String source, final int line) {
+    return new Callable<Result>() {
+      @Override
+      public Result call() {
+        List<Stmt> statements;
+        List<String> errors;
+        Lox.deferErrors();
+        try {
+          statements = new Parser(new Scanner(source, line).stream()).parse();
+        } finally {
+          errors = Lox.collectErrors();
+        }
+        return new Result(statements, errors);
+      }
+    };
+  }
+}
@@ -58,18 +58,68 @@ import static com.github.sadikovi.TokenType.*;
  *                | "this"
  *                | "super" "." IDENTIFIER ;
  * arguments      -> expression ( "," expresssion )* ;
+ *
+ * Binary, logical, unary and call expressions are parsed with operator precedence table, see
+ * `parsePrecedence`.
  */
 class Parser {
   public static class ParseError extends RuntimeException { }
 
-  private final List<Token> tokens;
-  private int current;
+  private final TokenStream tokens;
+  private final TokenBuffer buffer; // set when parsing function bodies lazily
+  private final TokenBuffer.Cursor cursor;
   private int loopDepth; // flag to indicate the loop (while or for) depth for "break"
+  private int blockDepth; // depth of nested blocks, 0 for top-level declarations
+  private boolean hadError = false; // true if this parser reported an error
 
   Parser(List<Token> tokens) {
+    this(new ListStream(tokens));
+  }
+
+  Parser(TokenStream tokens) {
     this.tokens = tokens;
-    this.current = 0;
+    this.buffer = null;
+    this.cursor = null;
     this.loopDepth = 0;
+    this.blockDepth = 0;
+  }
+
+  /**
+   * Creates a parser that only brace-matches bodies of top-level functions and methods of
+   * top-level classes if `lazyFunctions` is true, see LazyBody.
+   */
+  Parser(TokenBuffer tokens, boolean lazyFunctions) {
+    this.cursor = tokens.stream();
+    this.tokens = cursor;
+    this.buffer = lazyFunctions ? tokens : null;
+    this.loopDepth = 0;
+    this.blockDepth = 0;
+  }
+
+  /** Token stream over a list of scanned tokens */
+  private static class ListStream implements TokenStream {
+    private final List<Token> tokens;
+    private int current;
+
+    ListStream(List<Token> tokens) {
+      this.tokens = tokens;
+      this.current = 0;
+    }
+
+    @Override
+    public TokenType peekType() {
+      return tokens.get(current).type;
+    }
+
+    @Override
+    public Token peek() {
+      return tokens.get(current);
+    }
+
+    @Override
+    public void advance() {
+      if (current < tokens.size() - 1) current++;
+    }
   }
 
   public List<Stmt> parse() {
@@ -80,28 +130,29 @@ class Parser {
     return statements;
   }
 
+  /** Returns true if a syntax error was reported, scanner errors are reported by the scanner */
+  public boolean hadError() {
+    return hadError;
+  }
+
   /** Returns false if there are no tokens left or we have reached the end */
   private boolean isAtEnd() {
-    return current >= tokens.size() || peek().type == EOF;
+    return tokens.peekType() == EOF;
   }
 
   /** Returns the current token */
   private Token peek() {
-    return tokens.get(current);
+    return tokens.peek();
   }
 
-  /** Returns true if current token has one of the input types */
-  private boolean check(TokenType... types) {
-    if (isAtEnd()) return false;
-    for (TokenType type : types) {
-      if (peek().type == type) return true;
-    }
-    return false;
+  /** Returns true if current token has the input type */
+  private boolean check(TokenType type) {
+    return !isAtEnd() && tokens.peekType() == type;
   }
 
   /** Advances the current pointer */
   private void advance() {
-    current++;
+    tokens.advance();
   }
 
   /** Performs peek and advances pointer */
@@ -114,7 +165,7 @@ class Parser {
   /** Synchronize parser after an error */
   private void synchronize() {
     while (!isAtEnd()) {
-      switch (peek().type) {
+      switch (tokens.peekType()) {
         case SEMICOLON:
           advance();
           return;
@@ -134,6 +185,7 @@ class Parser {
 
   /** Throws a parsing error */
   private ParseError error(Token token, String message) {
+    hadError = true;
     Lox.report(token, message);
     throw new ParseError();
   }
@@ -219,11 +271,37 @@ class Parser {
     if (!check(LEFT_BRACE)) throw error(peek(), "Expected '{' before " + kind + " body");
     advance();
 
-    List<Stmt> body = block();
+    List<Stmt> body = (buffer != null && blockDepth == 0) ? lazyBlock(name) : block();
 
     return new Stmt.Function(name, params, body);
   }
 
+  /**
+   * Skips function body up to the matching "}" checking that braces and parentheses are
+   * balanced. Body is parsed on first use.
+   */
+  private List<Stmt> lazyBlock(Token name) {
+    int start = cursor.position();
+    int braces = 0;
+    int parens = 0;
+    while (!isAtEnd() && !(braces == 0 && check(RIGHT_BRACE))) {
+      switch (tokens.peekType()) {
+        case LEFT_BRACE: braces++; break;
+        case RIGHT_BRACE: braces--; break;
+        case LEFT_PAREN: parens++; break;
+        case RIGHT_PAREN:
+          if (--parens < 0) throw error(peek(), "Unexpected ')' in function body");
+          break;
+      }
+      advance();
+    }
+    if (!check(RIGHT_BRACE)) throw error(peek(), "Expected '}' after block");
+    if (parens != 0) throw error(peek(), "Expected ')' in function body");
+    int end = cursor.position();
+    advance();
+    return new LazyBody(buffer, start, end, name);
+  }
+
   private Stmt varDeclaration() {
     if (!check(IDENTIFIER)) throw error(peek(), "Expected variable name");
     Token name = peekAndAdvance();
@@ -390,13 +468,18 @@ class Parser {
   }
 
   private List<Stmt> block() {
-    List<Stmt> statements = new ArrayList<Stmt>();
-    while (!check(RIGHT_BRACE) && !isAtEnd()) {
-      statements.add(declaration());
+    blockDepth++;
+    try {
+      List<Stmt> statements = new ArrayList<Stmt>();
+      while (!check(RIGHT_BRACE) && !isAtEnd()) {
+        statements.add(declaration());
+      }
+      if (!check(RIGHT_BRACE)) throw error(peek(), "Expected '}' after block");
+      advance();
+      return statements;
+    } finally {
+      blockDepth--;
     }
-    if (!check(RIGHT_BRACE)) throw error(peek(), "Expected '}' after block");
-    advance();
-    return statements;
   }
 
   private Expr expression() {
@@ -408,7 +491,7 @@ class Parser {
       return lambdaExpression(peekAndAdvance());
     }
 
-    Expr expr = or();
+    Expr expr = parsePrecedence(Precedence.OR);
 
     if (check(EQUAL)) {
       Token equals = peekAndAdvance();
@@ -456,178 +539,220 @@ class Parser {
     return new Expr.Lambda(keyword, params, body);
   }
 
-  private Expr or() {
-    Expr expr = and();
-
-    while (check(OR) && !isAtEnd()) {
-      Token operator = peekAndAdvance();
-      Expr right = and();
-      expr = new Expr.Logical(expr, operator, right);
+  /**
+   * Parses expression with operators of the same or higher precedence (Pratt parser). Prefix and
+   * infix parse functions of each token are looked up in `rules` table.
+   */
+  private Expr parsePrecedence(Precedence precedence) {
+    Expr expr = prefix(rules[tokens.peekType().ordinal()].prefix);
+    while (precedence.ordinal() <= rules[tokens.peekType().ordinal()].precedence.ordinal()) {
+      expr = infix(rules[tokens.peekType().ordinal()].infix, expr);
     }
-
     return expr;
   }
 
-  private Expr and() {
-    Expr expr = equality();
-
-    while (check(AND) && !isAtEnd()) {
-      Token operator = peekAndAdvance();
-      Expr right = equality();
-      expr = new Expr.Logical(expr, operator, right);
+  private Expr prefix(Prefix prefix) {
+    switch (prefix) {
+      case GROUPING:
+        return grouping();
+      case LITERAL:
+        return literal();
+      case SUPER:
+        return superExpression();
+      case THIS:
+        return new Expr.This(peekAndAdvance());
+      case UNARY:
+        return unary();
+      case VARIABLE:
+        return new Expr.Variable(peekAndAdvance());
+      default:
+        throw error(peek(), "Expected expression");
     }
+  }
 
-    return expr;
+  private Expr infix(Infix infix, Expr left) {
+    switch (infix) {
+      case BINARY:
+        return binary(left);
+      case CALL:
+        return call(left);
+      case DOT:
+        return dot(left);
+      case LOGICAL:
+        return logical(left);
+      default:
+        throw error(peek(), "Expected expression");
+    }
   }
 
-  private Expr equality() {
-    Expr expr = comparison();
+  private Expr binary(Expr left) {
+    // left-associative, right operand binds tighter than the operator
+    Token op = peekAndAdvance();
+    Expr right = parsePrecedence(rules[op.type.ordinal()].precedence.next());
+    return new Expr.Binary(left, op, right);
+  }
 
-    while (check(BANG_EQUAL, EQUAL_EQUAL)) {
-      Token op = peekAndAdvance();
-      Expr right = comparison();
-      expr = new Expr.Binary(expr, op, right);
-    }
+  private Expr logical(Expr left) {
+    Token operator = peekAndAdvance();
+    Expr right = parsePrecedence(rules[operator.type.ordinal()].precedence.next());
+    return new Expr.Logical(left, operator, right);
+  }
 
-    return expr;
+  private Expr unary() {
+    // ( "!" | "-" ) unary | call
+    // also support "+123"
+    Token op = peekAndAdvance();
+    return new Expr.Unary(op, parsePrecedence(Precedence.UNARY));
   }
 
-  private Expr comparison() {
-    // addition ( ( ">" | ">=" | "<" | "<=" ) addition )* ;
-    Expr expr = addition();
+  private Expr call(Expr callee) {
+    advance();
+
+    List<Expr> arguments = new ArrayList<Expr>();
 
-    while (check(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
-      Token op = peekAndAdvance();
-      Expr right = addition();
-      expr = new Expr.Binary(expr, op, right);
+    if (!check(RIGHT_PAREN)) {
+      // parse arguments
+      while (true) {
+        if (arguments.size() >= 255) {
+          error(peek(), "Cannot have more than 255 arguments");
+        }
+        arguments.add(expression());
+        if (!check(COMMA)) break;
+        advance();
+      }
     }
 
-    return expr;
+    if (!check(RIGHT_PAREN)) throw error(peek(), "Expected ')' after function call");
+    Token paren = peekAndAdvance();
+
+    return new Expr.Call(callee, paren, arguments);
   }
 
-  private Expr addition() {
-    // multiplication ( ( "-" | "+" ) multiplication )* ;
-    Expr expr = multiplication();
+  private Expr dot(Expr object) {
+    advance();
 
-    while (check(MINUS, PLUS)) {
-      Token op = peekAndAdvance();
-      Expr right = multiplication();
-      expr = new Expr.Binary(expr, op, right);
-    }
+    if (!check(IDENTIFIER)) throw error(peek(), "Expected an identifier");
+    Token name = peekAndAdvance();
 
-    return expr;
+    return new Expr.Get(object, name);
   }
 
-  private Expr multiplication() {
-    // unary ( ( "/" | "*" ) unary )* ;
-    Expr expr = unary();
-
-    while (check(SLASH, STAR)) {
-      Token op = peekAndAdvance();
-      Expr right = unary();
-      expr = new Expr.Binary(expr, op, right);
+  private Expr literal() {
+    // NUMBER | STRING | "false" | "true" | "nil"
+    switch (tokens.peekType()) {
+      case FALSE:
+        advance();
+        return new Expr.Literal(false);
+      case TRUE:
+        advance();
+        return new Expr.Literal(true);
+      case NIL:
+        advance();
+        return new Expr.Literal(null);
+      default:
+        return new Expr.Literal(peekAndAdvance().literal);
     }
+  }
 
-    return expr;
+  private Expr superExpression() {
+    Token keyword = peekAndAdvance();
+    if (!check(DOT)) throw error(peek(), "Expected '.' after 'super'");
+    advance();
+    if (!check(IDENTIFIER)) throw error(peek(), "Expected superclass method name");
+    Token method = peekAndAdvance();
+    return new Expr.Super(keyword, method);
   }
 
-  private Expr unary() {
-    // ( "!" | "-" ) unary | primary
-    // also support "+123"
-    if (check(BANG, MINUS, PLUS)) {
-      Token op = peekAndAdvance();
-      return new Expr.Unary(op, unary());
+  private Expr grouping() {
+    advance();
+    Expr expr = expression();
+    if (check(RIGHT_PAREN)) {
+      advance();
+      return new Expr.Grouping(expr);
     } else {
-      return call();
+      Token token = peek();
+      advance();
+      throw error(token, "Expected ')' after expression");
     }
   }
 
-  private Expr call() {
-    Expr expr = primary();
-    while (!isAtEnd()) {
-      if (check(LEFT_PAREN)) {
-        advance();
+  /** Precedence of infix operators from the lowest to the highest */
+  private enum Precedence {
+    NONE,
+    OR,         // or
+    AND,        // and
+    EQUALITY,   // == !=
+    COMPARISON, // < > <= >=
+    TERM,       // + -
+    FACTOR,     // * /
+    UNARY,      // ! - +
+    CALL,       // . ()
+    PRIMARY;
 
-        List<Expr> arguments = new ArrayList<Expr>();
-
-        if (!check(RIGHT_PAREN)) {
-          // parse arguments
-          while (true) {
-            if (arguments.size() >= 255) {
-              error(peek(), "Cannot have more than 255 arguments");
-            }
-            arguments.add(expression());
-            if (!check(COMMA)) break;
-            advance();
-          }
-        }
+    private static final Precedence[] values = values();
 
-        if (!check(RIGHT_PAREN)) throw error(peek(), "Expected ')' after function call");
-        Token paren = peekAndAdvance();
-
-        expr = new Expr.Call(expr, paren, arguments);
-      } else if (check(DOT)) {
-        advance();
-
-        if (!check(IDENTIFIER)) throw error(peek(), "Expected an identifier");
-        Token name = peekAndAdvance();
-
-        expr = new Expr.Get(expr, name);
-      } else {
-        break;
-      }
+    /** Returns the next higher precedence */
+    Precedence next() {
+      return values[ordinal() + 1];
     }
-    return expr;
   }
 
-  private Expr primary() {
-    // NUMBER | STRING | "false" | "true" | "nil" | "(" expression ")" ;
-    if (check(NUMBER, STRING)) return new Expr.Literal(peekAndAdvance().literal);
+  private enum Prefix {
+    NONE, GROUPING, LITERAL, SUPER, THIS, UNARY, VARIABLE
+  }
 
-    if (check(FALSE)) {
-      advance();
-      return new Expr.Literal(false);
-    }
+  private enum Infix {
+    NONE, BINARY, CALL, DOT, LOGICAL
+  }
 
-    if (check(TRUE)) {
-      advance();
-      return new Expr.Literal(true);
-    }
+  /** Parse functions and infix precedence of a token type, similar to clox `ParseRule` */
+  private static class ParseRule {
+    final Prefix prefix;
+    final Infix infix;
+    final Precedence precedence;
 
-    if (check(NIL)) {
-      advance();
-      return new Expr.Literal(null);
+    ParseRule(Prefix prefix, Infix infix, Precedence precedence) {
+      this.prefix = prefix;
+      this.infix = infix;
+      this.precedence = precedence;
     }
+  }
 
-    if (check(SUPER)) {
-      Token keyword = peekAndAdvance();
-      if (!check(DOT)) throw error(peek(), "Expected '.' after 'super'");
-      advance();
-      if (!check(IDENTIFIER)) throw error(peek(), "Expected superclass method name");
-      Token method = peekAndAdvance();
-      return new Expr.Super(keyword, method);
-    }
+  // Parse rules indexed by token type ordinal
+  private static final ParseRule[] rules = new ParseRule[TokenType.values().length];
 
-    if (check(THIS)) {
-      return new Expr.This(peekAndAdvance());
+  static {
+    ParseRule none = new ParseRule(Prefix.NONE, Infix.NONE, Precedence.NONE);
+    for (int i = 0; i < rules.length; i++) {
+      rules[i] = none;
     }
 
-    if (check(IDENTIFIER)) {
-      return new Expr.Variable(peekAndAdvance());
-    }
+    rule(LEFT_PAREN, Prefix.GROUPING, Infix.CALL, Precedence.CALL);
+    rule(DOT, Prefix.NONE, Infix.DOT, Precedence.CALL);
+    rule(MINUS, Prefix.UNARY, Infix.BINARY, Precedence.TERM);
+    rule(PLUS, Prefix.UNARY, Infix.BINARY, Precedence.TERM);
+    rule(SLASH, Prefix.NONE, Infix.BINARY, Precedence.FACTOR);
+    rule(STAR, Prefix.NONE, Infix.BINARY, Precedence.FACTOR);
+    rule(BANG, Prefix.UNARY, Infix.NONE, Precedence.NONE);
+    rule(BANG_EQUAL, Prefix.NONE, Infix.BINARY, Precedence.EQUALITY);
+    rule(EQUAL_EQUAL, Prefix.NONE, Infix.BINARY, Precedence.EQUALITY);
+    rule(GREATER, Prefix.NONE, Infix.BINARY, Precedence.COMPARISON);
+    rule(GREATER_EQUAL, Prefix.NONE, Infix.BINARY, Precedence.COMPARISON);
+    rule(LESS, Prefix.NONE, Infix.BINARY, Precedence.COMPARISON);
+    rule(LESS_EQUAL, Prefix.NONE, Infix.BINARY, Precedence.COMPARISON);
+    rule(IDENTIFIER, Prefix.VARIABLE, Infix.NONE, Precedence.NONE);
+    rule(STRING, Prefix.LITERAL, Infix.NONE, Precedence.NONE);
+    rule(NUMBER, Prefix.LITERAL, Infix.NONE, Precedence.NONE);
+    rule(AND, Prefix.NONE, Infix.LOGICAL, Precedence.AND);
+    rule(OR, Prefix.NONE, Infix.LOGICAL, Precedence.OR);
+    rule(FALSE, Prefix.LITERAL, Infix.NONE, Precedence.NONE);
+    rule(TRUE, Prefix.LITERAL, Infix.NONE, Precedence.NONE);
+    rule(NIL, Prefix.LITERAL, Infix.NONE, Precedence.NONE);
+    rule(SUPER, Prefix.SUPER, Infix.NONE, Precedence.NONE);
+    rule(THIS, Prefix.THIS, Infix.NONE, Precedence.NONE);
+  }
 
-    if (check(LEFT_PAREN)) {
-      advance();
-      Expr expr = expression();
-      if (check(RIGHT_PAREN)) {
-        advance();
-        return new Expr.Grouping(expr);
-      } else {
-        Token token = peek();
-        advance();
-        throw error(token, "Expected ')' after expression");
-      }
-    }
-    throw error(peek(), "Expected expression");
+  private static void rule(TokenType type, Prefix prefix, Infix infix, Precedence precedence) {
+    rules[type.ordinal()] = new ParseRule(prefix, infix, precedence);
   }
 }
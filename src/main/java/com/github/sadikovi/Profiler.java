@@ -0,0 +1,154 @@
+package com.github.sadikovi;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sampling profiler of Lox code, see `--profile` flag.
+ *
+ * A background thread periodically reads the interpreter call stack (see CallStack) and counts
+ * collapsed stacks, functions and lines on top of the stack. Collapsed stacks are written in the
+ * "frame;frame;frame count" format that flame graph tools accept.
+ */
+class Profiler {
+  private static final int MAX_FRAMES = 512;
+
+  private final CallStack stack;
+  private final long intervalNanos;
+  private final String[] frames = new String[MAX_FRAMES];
+  private final Map<String, long[]> stacks = new HashMap<String, long[]>();
+  private final Map<String, long[]> self = new HashMap<String, long[]>();
+  private final Map<String, long[]> total = new HashMap<String, long[]>();
+  private final Map<String, long[]> lines = new HashMap<String, long[]>();
+  private long samples = 0;
+  private volatile boolean running = false;
+  private Thread thread;
+
+  Profiler(CallStack stack, long intervalNanos) {
+    this.stack = stack;
+    this.intervalNanos = intervalNanos;
+  }
+
+  /** Starts sampling the call stack */
+  public void start() {
+    if (running) return;
+    running = true;
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (running) {
+          LockSupport.parkNanos(intervalNanos);
+          if (running) sample();
+        }
+      }
+    }, "lox-profiler");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** Stops sampling, samples are kept and accumulated on the next start */
+  public void stop() {
+    if (!running) return;
+    running = false;
+    LockSupport.unpark(thread);
+    try {
+      thread.join();
+    } catch (InterruptedException err) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void sample() {
+    int line = stack.line;
+    int count = stack.snapshot(frames);
+    if (count < 0) return; // frame was popped while copying
+
+    StringBuilder sb = new StringBuilder(CallStack.SCRIPT);
+    for (int i = 0; i < count; i++) {
+      sb.append(';').append(frames[i]);
+    }
+    increment(stacks, sb.toString());
+
+    String top = (count == 0) ? CallStack.SCRIPT : frames[count - 1];
+    increment(self, top);
+    increment(lines, top + ":" + line);
+    increment(total, CallStack.SCRIPT);
+    for (int i = 0; i < count; i++) {
+      if (!contains(frames, i, frames[i])) increment(total, frames[i]);
+    }
+    samples++;
+  }
+
+  /** Returns true if the name is in the first `count` frames, i.e. recursive call */
+  private static boolean contains(String[] frames, int count, String name) {
+    for (int i = 0; i < count; i++) {
+      if (frames[i].equals(name)) return true;
+    }
+    return false;
+  }
+
+  private static void increment(Map<String, long[]> counts, String key) {
+    long[] count = counts.get(key);
+    if (count == null) {
+      counts.put(key, new long[] { 1 });
+    } else {
+      count[0]++;
+    }
+  }
+
+  /** Writes collapsed stacks, one stack per line */
+  public void writeCollapsed(Writer out) throws IOException {
+    for (Map.Entry<String, long[]> entry : sorted(stacks)) {
+      out.write(entry.getKey() + " " + entry.getValue()[0] + "\n");
+    }
+    out.flush();
+  }
+
+  /** Prints `limit` hottest functions and lines */
+  public void printTop(PrintStream out, int limit) {
+    out.println("== Profile ==");
+    out.println("samples: " + samples + ", interval: " + (intervalNanos / 1000) + " us");
+    if (samples == 0) return;
+
+    out.println(String.format("%8s %8s  %s", "self %", "total %", "function"));
+    List<Map.Entry<String, long[]>> functions = sorted(self);
+    for (int i = 0; i < Math.min(limit, functions.size()); i++) {
+      String name = functions.get(i).getKey();
+      out.println(String.format("%8.2f %8.2f  %s",
+        percent(functions.get(i).getValue()[0]), percent(total.get(name)[0]), name));
+    }
+
+    out.println(String.format("%8s  %s", "self %", "line"));
+    List<Map.Entry<String, long[]>> hot = sorted(lines);
+    for (int i = 0; i < Math.min(limit, hot.size()); i++) {
+      out.println(String.format("%8.2f  %s",
+        percent(hot.get(i).getValue()[0]), hot.get(i).getKey()));
+    }
+  }
+
+  private double percent(long count) {
+    return count * 100.0 / samples;
+  }
+
+  /** Returns entries sorted by count in descending order */
+  private static List<Map.Entry<String, long[]>> sorted(Map<String, long[]> counts) {
+    List<Map.Entry<String, long[]>> entries =
+      new ArrayList<Map.Entry<String, long[]>>(counts.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<String, long[]>>() {
+      @Override
+      public int compare(Map.Entry<String, long[]> a, Map.Entry<String, long[]> b) {
+        int cmp = Long.compare(b.getValue()[0], a.getValue()[0]);
+        return (cmp != 0) ? cmp : a.getKey().compareTo(b.getKey());
+      }
+    });
+    return entries;
+  }
+}
@@ -11,6 +11,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   private final Interpreter interpreter;
   private FunctionType currentFunction = FunctionType.NONE;
   private ClassType currentClass = ClassType.NONE;
+  private boolean hadError = false; // true if this resolver reported an error
 
   /** Variable scope state, state is added when a variable is declared  */
   private static class State {
@@ -53,6 +54,16 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     this.interpreter = interpreter;
   }
 
+  /** Creates resolver with a copy of scopes of another resolver, see LazyBody */
+  private Resolver(Resolver resolver) {
+    this.scopes = new LinkedList<Map<String, State>>();
+    for (Map<String, State> scope : resolver.scopes) {
+      this.scopes.add(new HashMap<String, State>(scope));
+    }
+    this.interpreter = resolver.interpreter;
+    this.currentClass = resolver.currentClass;
+  }
+
   @Override
   public Void visit(Stmt.Block stmt) {
     beginScope();
@@ -75,7 +86,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     define(stmt.name);
 
     if (stmt.superclass != null && stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
-      Lox.error(stmt.superclass.name, "A class cannot inherit from itself");
+      error(stmt.superclass.name, "A class cannot inherit from itself");
     }
 
     if (stmt.superclass != null) {
@@ -154,12 +165,12 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visit(Stmt.Return stmt) {
     if (currentFunction == FunctionType.NONE) {
-      Lox.error(stmt.keyword, "Cannot return from top-level code");
+      error(stmt.keyword, "Cannot return from top-level code");
     }
 
     if (stmt.value != null) {
       if (currentFunction == FunctionType.INITIALIZER) {
-        Lox.error(stmt.keyword, "Cannot return a value from an initializer");
+        error(stmt.keyword, "Cannot return a value from an initializer");
       }
       resolve(stmt.value);
     }
@@ -247,9 +258,9 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visit(Expr.Super expr) {
     if (currentClass == ClassType.NONE) {
-      Lox.error(expr.keyword, "Cannot use 'super' outside of a class");
+      error(expr.keyword, "Cannot use 'super' outside of a class");
     } else if (currentClass != ClassType.SUBCLASS) {
-      Lox.error(expr.keyword, "Cannot use 'super' inside of a class with no superclass");
+      error(expr.keyword, "Cannot use 'super' inside of a class with no superclass");
     }
     resolveLocal(expr, expr.keyword);
     return null;
@@ -258,10 +269,10 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visit(Expr.This expr) {
     if (currentClass == ClassType.NONE) {
-      Lox.error(expr.keyword, "Cannot use 'this' outside of a class");
+      error(expr.keyword, "Cannot use 'this' outside of a class");
     }
     if (currentFunction == FunctionType.CLASS_METHOD) {
-      Lox.error(expr.keyword, "Cannot use 'this' inside a class method");
+      error(expr.keyword, "Cannot use 'this' inside a class method");
     }
     resolveLocal(expr, expr.keyword);
     return null;
@@ -278,7 +289,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     if (!scopes.isEmpty()) {
       State state = scopes.peek().get(expr.name.lexeme);
       if (state != null && !state.defined) {
-        Lox.error(expr.name, "Cannot read local variable in its own initializer");
+        error(expr.name, "Cannot read local variable in its own initializer");
       }
     }
     resolveLocal(expr, expr.name);
@@ -317,14 +328,31 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     resolveFunction(function.name, function.params, function.body, type);
   }
 
-  private void resolveFunction(Token name, List<Token> params, List<Stmt> body, FunctionType type) {
+  private void resolveFunction(
+      final Token name,
+      final List<Token> params,
+      List<Stmt> body,
+      final FunctionType type) {
+    if (body instanceof LazyBody && !((LazyBody) body).isLoaded()) {
+      // Body is resolved in the current scopes once it is parsed
+      final Resolver resolver = new Resolver(this);
+      ((LazyBody) body).setResolution(new LazyBody.Resolution() {
+        @Override
+        public boolean resolve(List<Stmt> statements) {
+          resolver.resolveFunction(name, params, statements, type);
+          return !resolver.hadError();
+        }
+      });
+      return;
+    }
+
     FunctionType enclosing = currentFunction;
     currentFunction = type;
     try {
       beginScope();
 
       if (params == null && currentFunction != FunctionType.GETTER) {
-        Lox.error(name, "Is not a getter method");
+        error(name, "Is not a getter method");
       }
 
       if (params != null) {
@@ -340,6 +368,16 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
   }
 
+  /** Returns true if a resolution error was reported */
+  public boolean hadError() {
+    return hadError;
+  }
+
+  private void error(Token token, String message) {
+    hadError = true;
+    Lox.error(token, message);
+  }
+
   private void beginScope() {
     scopes.push(new HashMap<String, State>());
   }
@@ -348,7 +386,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     Map<String, State> scope = scopes.pop();
     for (String name : scope.keySet()) {
       if (!scope.get(name).used) {
-        Lox.error(scope.get(name).name, "Variable '" + name + "' is never used");
+        error(scope.get(name).name, "Variable '" + name + "' is never used");
       }
     }
   }
@@ -358,7 +396,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     Map<String, State> scope = scopes.peek();
     if (scope.containsKey(name.lexeme)) {
-      Lox.error(name, "Variable with this name was already declared in this scope");
+      error(name, "Variable with this name was already declared in this scope");
     }
     scope.put(name.lexeme, new State(name));
   }
@@ -0,0 +1,93 @@
+package com.github.sadikovi;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Accounts syntax trees that an interpreter keeps across submissions, e.g. REPL lines or snippets
+ * of a host, see `Interpreter.trackRetention`.
+ *
+ * Top-level statements of a submission are unreachable once they run, what stays is the bodies of
+ * functions, methods and lambdas referenced from environments. Bodies are tracked with weak
+ * references and counted without nested bodies, so the totals drop when the garbage collector
+ * clears a body while its nested closures are still alive. A script is retained while any of its
+ * bodies is. Statements that are submitted again, e.g. reused by IncrementalParser, are counted
+ * again. Bodies that are not parsed yet (see LazyBody) are tracked without nodes, counting them
+ * must not parse them.
+ */
+class Retention {
+  /** Submission with the number of its bodies that are still reachable */
+  private static class Script {
+    int bodies = 0;
+  }
+
+  private static class Body extends WeakReference<List<Stmt>> {
+    final Script script;
+    final long nodes; // nodes of the body without nested bodies
+
+    Body(List<Stmt> body, Script script, long nodes, ReferenceQueue<List<Stmt>> queue) {
+      super(body, queue);
+      this.script = script;
+      this.nodes = nodes;
+    }
+  }
+
+  /** Registers bodies of a submission, nested bodies are registered separately */
+  private class Collector extends Stats.NodeCounter {
+    final Script script;
+
+    Collector(Script script) {
+      this.script = script;
+    }
+
+    @Override
+    void countBody(List<Stmt> body) {
+      if (body == null) return;
+      Collector counter = new Collector(script);
+      if (!(body instanceof LazyBody) || ((LazyBody) body).isLoaded()) counter.count(body);
+      bodies.add(new Body(body, script, counter.nodes, queue));
+      script.bodies++;
+      Retention.this.nodes += counter.nodes;
+    }
+  }
+
+  private final ReferenceQueue<List<Stmt>> queue = new ReferenceQueue<List<Stmt>>();
+  // Strong references to the weak references until they are cleared
+  private final Set<Body> bodies = Collections.newSetFromMap(new IdentityHashMap<Body, Boolean>());
+  private long scripts = 0;
+  private long nodes = 0;
+
+  /** Registers function bodies of the submission */
+  public void track(List<Stmt> statements) {
+    expunge();
+    Script script = new Script();
+    new Collector(script).count(statements);
+    if (script.bodies > 0) scripts++;
+  }
+
+  /** Returns number of submissions with reachable function bodies */
+  public long scripts() {
+    expunge();
+    return scripts;
+  }
+
+  /** Returns number of syntax tree nodes in reachable function bodies */
+  public long nodes() {
+    expunge();
+    return nodes;
+  }
+
+  /** Updates totals for bodies cleared by the garbage collector */
+  private void expunge() {
+    Body body;
+    while ((body = (Body) queue.poll()) != null) {
+      bodies.remove(body);
+      nodes -= body.nodes;
+      if (--body.script.bodies == 0) scripts--;
+    }
+  }
+}
@@ -6,9 +6,24 @@ package com.github.sadikovi;
  */
 class RuntimeError extends RuntimeException {
   final Token token;
+  final String trace; // Lox stack trace or null
 
   RuntimeError(Token token, String message) {
+    this(token, message, null);
+  }
+
+  RuntimeError(Token token, String message, String trace) {
     super(message);
     this.token = token;
+    this.trace = trace;
+
+    if (LoxEvents.isRecording()) {
+      LoxEvents.RuntimeError event = new LoxEvents.RuntimeError();
+      if (event.shouldCommit()) {
+        event.message = message;
+        event.line = (token == null) ? 0 : token.line;
+        event.commit();
+      }
+    }
   }
 }
@@ -1,7 +1,9 @@
 package com.github.sadikovi;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.List;
 
 import static com.github.sadikovi.TokenType.*;
@@ -10,68 +12,181 @@ import static com.github.sadikovi.TokenType.*;
  * Scanner class that tokenizes the source code.
  */
 public class Scanner {
-  private static final HashMap<String, TokenType> keywords = new HashMap<String, TokenType>();
+  // Lexemes of tokens that always have the same text, indexed by token type ordinal
+  private static final String[] lexemes = new String[TokenType.values().length];
 
   static {
-    keywords.put("and", AND);
-    keywords.put("class", CLASS);
-    keywords.put("else", ELSE);
-    keywords.put("false", FALSE);
-    keywords.put("fun", FUN);
-    keywords.put("for", FOR);
-    keywords.put("if", IF);
-    keywords.put("nil", NIL);
-    keywords.put("or", OR);
-    keywords.put("print", PRINT);
-    keywords.put("return", RETURN);
-    keywords.put("super", SUPER);
-    keywords.put("this", THIS);
-    keywords.put("true", TRUE);
-    keywords.put("var", VAR);
-    keywords.put("while", WHILE);
-    keywords.put("break", BREAK);
-  }
-
-  private final String source;
-  private final List<Token> tokens;
+    lexemes[AND.ordinal()] = "and";
+    lexemes[CLASS.ordinal()] = "class";
+    lexemes[ELSE.ordinal()] = "else";
+    lexemes[FALSE.ordinal()] = "false";
+    lexemes[FUN.ordinal()] = "fun";
+    lexemes[FOR.ordinal()] = "for";
+    lexemes[IF.ordinal()] = "if";
+    lexemes[NIL.ordinal()] = "nil";
+    lexemes[OR.ordinal()] = "or";
+    lexemes[PRINT.ordinal()] = "print";
+    lexemes[RETURN.ordinal()] = "return";
+    lexemes[SUPER.ordinal()] = "super";
+    lexemes[THIS.ordinal()] = "this";
+    lexemes[TRUE.ordinal()] = "true";
+    lexemes[VAR.ordinal()] = "var";
+    lexemes[WHILE.ordinal()] = "while";
+    lexemes[BREAK.ordinal()] = "break";
+    lexemes[LEFT_PAREN.ordinal()] = "(";
+    lexemes[RIGHT_PAREN.ordinal()] = ")";
+    lexemes[LEFT_BRACE.ordinal()] = "{";
+    lexemes[RIGHT_BRACE.ordinal()] = "}";
+    lexemes[COMMA.ordinal()] = ",";
+    lexemes[DOT.ordinal()] = ".";
+    lexemes[MINUS.ordinal()] = "-";
+    lexemes[PLUS.ordinal()] = "+";
+    lexemes[SEMICOLON.ordinal()] = ";";
+    lexemes[SLASH.ordinal()] = "/";
+    lexemes[STAR.ordinal()] = "*";
+    lexemes[BANG.ordinal()] = "!";
+    lexemes[BANG_EQUAL.ordinal()] = "!=";
+    lexemes[EQUAL.ordinal()] = "=";
+    lexemes[EQUAL_EQUAL.ordinal()] = "==";
+    lexemes[GREATER.ordinal()] = ">";
+    lexemes[GREATER_EQUAL.ordinal()] = ">=";
+    lexemes[LESS.ordinal()] = "<";
+    lexemes[LESS_EQUAL.ordinal()] = "<=";
+    lexemes[EOF.ordinal()] = "";
+  }
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private Reader reader; // source of characters, null once the end of input is reached
+  private char[] buffer; // window of the source that always contains the current lexeme
+  private int limit; // number of valid characters in the buffer
+  private boolean retain; // true if the whole source is kept in the buffer
+  private List<Token> tokens;
+  private TokenType type; // type of the last scanned token in range [start, current)
   private int start;
   private int current;
   private int line;
+  private boolean hadError = false; // true if this scanner reported an error
 
   public Scanner(String source) {
-    this.source = source;
-    this.tokens = new ArrayList<Token>();
+    this(source, 1);
+  }
+
+  /** Creates a scanner for a fragment of a larger source that starts at the given line */
+  public Scanner(String source, int line) {
+    this.reader = null;
+    this.buffer = source.toCharArray();
+    this.limit = buffer.length;
+    this.retain = true;
+    this.start = 0;
+    this.current = 0;
+    this.line = line;
+  }
+
+  /**
+   * Creates a scanner that reads source from the reader on demand, only the current lexeme and a
+   * small buffer are kept in memory. Use `stream()` to scan tokens lazily.
+   */
+  public Scanner(Reader reader) {
+    this.reader = reader;
+    this.buffer = new char[BUFFER_SIZE];
+    this.limit = 0;
+    this.retain = false;
     this.start = 0;
     this.current = 0;
     this.line = 1;
   }
 
-  /** Converts source into a list of tokens */
-  private void scanTokens() {
-    while (!isAtEnd()) {
+  /**
+   * Converts source into a token buffer. Tokens are stored as offsets into the source, the whole
+   * source is kept in memory.
+   */
+  public TokenBuffer scanTokens() {
+    retain = true;
+    TokenBuffer tokens = new TokenBuffer();
+    while (true) {
+      TokenType next = nextToken();
+      tokens.add(next, start, current, line);
+      if (next == EOF) break;
+    }
+    tokens.setSource(buffer);
+    return tokens;
+  }
+
+  /**
+   * Scans the next token, returns EOF once all characters have been consumed.
+   * Token is in range [start, current) of the buffer until the next call.
+   */
+  private TokenType nextToken() {
+    type = null;
+    while (type == null && !isAtEnd()) {
       // We are at the beginning of the next lexeme
       start = current;
       scanToken();
     }
 
     // Add termination token
-    tokens.add(new Token(EOF, "", null, line));
+    if (type == null) {
+      start = current;
+      type = EOF;
+    }
+    return type;
   }
 
   /** Returns true if all characters have been consumed */
   private boolean isAtEnd() {
-    return current >= source.length();
+    return !available(1);
+  }
+
+  /** Returns true if there are at least `count` characters available from current position */
+  private boolean available(int count) {
+    if (current + count <= limit) return true;
+    if (reader == null) return false;
+    fill(current + count);
+    return current + count <= limit;
+  }
+
+  /** Reads more characters into the buffer, characters before the current lexeme are discarded */
+  private void fill(int required) {
+    if (start > 0 && !retain) {
+      System.arraycopy(buffer, start, buffer, 0, limit - start);
+      limit -= start;
+      current -= start;
+      required -= start;
+      start = 0;
+    }
+    // Keep at least 2 free slots, a surrogate pair cannot be read into the last slot
+    if (Math.max(required, limit + 2) > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, required));
+    }
+    try {
+      while (limit < required) {
+        int count = reader.read(buffer, limit, buffer.length - limit);
+        if (count < 0) {
+          reader.close();
+          reader = null;
+          return;
+        }
+        if (count == 0) {
+          // Reader needs more room for the next character, reading again would return 0 again
+          buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        limit += count;
+      }
+    } catch (IOException err) {
+      throw new UncheckedIOException(err);
+    }
   }
 
   private char advance() {
     current++;
-    return source.charAt(current - 1);
+    return buffer[current - 1];
   }
 
   /** Matches the current character and advances index only on match */
   private boolean match(char expected) {
     if (isAtEnd()) return false;
-    if (source.charAt(current) != expected) return false;
+    if (buffer[current] != expected) return false;
     current++;
     return true;
   }
@@ -79,13 +194,23 @@ public class Scanner {
   /** Peek the current character without advancing */
   private char peek() {
     if (isAtEnd()) return '\0';
-    return source.charAt(current);
+    return buffer[current];
   }
 
   /** Peeks the next after current without advancing */
   private char peekNext() {
-    if (current + 1 >= source.length()) return '\0';
-    return source.charAt(current + 1);
+    if (!available(2)) return '\0';
+    return buffer[current + 1];
+  }
+
+  /** Returns true if an error was reported while scanning */
+  public boolean hadError() {
+    return hadError;
+  }
+
+  private void error(String message) {
+    hadError = true;
+    Lox.error(line, message);
   }
 
   /** Match a multiline comment */
@@ -94,10 +219,11 @@ public class Scanner {
     while (!isAtEnd() && !(peek() == '*' && peekNext() == '/')) {
       if (peek() == '\n') line++;
       advance();
+      if (!retain) start = current; // comment is not a lexeme, no need to keep it in the buffer
     }
 
     if (isAtEnd()) {
-      Lox.error(line, "Unterminated comment");
+      error("Unterminated comment");
       return;
     }
 
@@ -113,18 +239,17 @@ public class Scanner {
     }
 
     if (isAtEnd()) {
-      Lox.error(line, "Unterminated string");
+      error("Unterminated string");
       return;
     }
 
     advance(); // close '"'
 
-    String value = source.substring(start + 1, current - 1);
-    addToken(STRING, value);
+    addToken(STRING);
   }
 
   /** Returns true if character is a digit */
-  private boolean isDigit(char c) {
+  private static boolean isDigit(char c) {
     return c >= '0' && c <= '9';
   }
 
@@ -138,7 +263,7 @@ public class Scanner {
 
     while (isDigit(peek())) advance();
 
-    addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+    addToken(NUMBER);
   }
 
   /** Returns true if a character is a letter */
@@ -154,20 +279,82 @@ public class Scanner {
   /** Match an identifier */
   private void identifier() {
     while (isAlphaNumeric(peek())) advance();
+    addToken(identifierType());
+  }
+
+  /** Returns keyword type of the current lexeme or IDENTIFIER, same as clox `identifierType` */
+  private TokenType identifierType() {
+    switch (buffer[start]) {
+      case 'a': return checkKeyword(1, "nd", AND);
+      case 'b': return checkKeyword(1, "reak", BREAK);
+      case 'c': return checkKeyword(1, "lass", CLASS);
+      case 'e': return checkKeyword(1, "lse", ELSE);
+      case 'f':
+        if (current - start > 1) {
+          switch (buffer[start + 1]) {
+            case 'a': return checkKeyword(2, "lse", FALSE);
+            case 'o': return checkKeyword(2, "r", FOR);
+            case 'u': return checkKeyword(2, "n", FUN);
+          }
+        }
+        break;
+      case 'i': return checkKeyword(1, "f", IF);
+      case 'n': return checkKeyword(1, "il", NIL);
+      case 'o': return checkKeyword(1, "r", OR);
+      case 'p': return checkKeyword(1, "rint", PRINT);
+      case 'r': return checkKeyword(1, "eturn", RETURN);
+      case 's': return checkKeyword(1, "uper", SUPER);
+      case 't':
+        if (current - start > 1) {
+          switch (buffer[start + 1]) {
+            case 'h': return checkKeyword(2, "is", THIS);
+            case 'r': return checkKeyword(2, "ue", TRUE);
+          }
+        }
+        break;
+      case 'v': return checkKeyword(1, "ar", VAR);
+      case 'w': return checkKeyword(1, "hile", WHILE);
+    }
+    return IDENTIFIER;
+  }
 
-    String lexeme = source.substring(start, current);
-    TokenType type = keywords.get(lexeme);
-    if (type == null) type = IDENTIFIER;
-    addToken(type);
+  /** Returns type if the rest of the lexeme after offset matches the keyword suffix */
+  private TokenType checkKeyword(int offset, String rest, TokenType type) {
+    if (current - start != offset + rest.length()) return IDENTIFIER;
+    for (int i = 0; i < rest.length(); i++) {
+      if (buffer[start + offset + i] != rest.charAt(i)) return IDENTIFIER;
+    }
+    return type;
   }
 
   private void addToken(TokenType type) {
-    addToken(type, null);
+    this.type = type;
   }
 
-  private void addToken(TokenType type, Object literal) {
-    String lexeme = source.substring(start, current);
-    tokens.add(new Token(type, lexeme, literal, line));
+  /** Creates token for characters in range [start, end) of the source */
+  static Token token(char[] source, TokenType type, int start, int end, int line) {
+    String lexeme = lexemes[type.ordinal()];
+    if (lexeme == null) lexeme = new String(source, start, end - start);
+
+    Object literal = null;
+    if (type == STRING) {
+      literal = lexeme.substring(1, lexeme.length() - 1);
+    } else if (type == NUMBER) {
+      literal = number(source, start, end);
+    }
+    return new Token(type, lexeme, literal, line);
+  }
+
+  /** Parses number in range [start, end), integers are parsed without creating a string */
+  static double number(char[] source, int start, int end) {
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      if (!isDigit(source[i]) || value > (Long.MAX_VALUE - 9) / 10) {
+        return Double.parseDouble(new String(source, start, end - start));
+      }
+      value = value * 10 + (source[i] - '0');
+    }
+    return (double) value;
   }
 
   private void scanToken() {
@@ -222,7 +409,7 @@ public class Scanner {
         } else if (isAlpha(c)) {
           identifier();
         } else {
-          Lox.error(line, "Unexpected character");
+          error("Unexpected character");
         }
         break;
     }
@@ -232,9 +419,38 @@ public class Scanner {
    * Returns parsed tokens.
    */
   public List<Token> getTokens() {
-    if (this.tokens.isEmpty()) {
-      scanTokens();
+    if (this.tokens == null) {
+      this.tokens = scanTokens().toList();
     }
     return this.tokens;
   }
+
+  /**
+   * Returns tokens as a stream that scans the next token only when parser advances.
+   */
+  public TokenStream stream() {
+    nextToken();
+    return new TokenStream() {
+      private Token token; // current token, created on demand
+
+      @Override
+      public TokenType peekType() {
+        return type;
+      }
+
+      @Override
+      public Token peek() {
+        if (token == null) token = token(buffer, type, start, current, line);
+        return token;
+      }
+
+      @Override
+      public void advance() {
+        if (type != EOF) {
+          nextToken();
+          token = null;
+        }
+      }
+    };
+  }
 }
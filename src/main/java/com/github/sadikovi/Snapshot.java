@@ -0,0 +1,426 @@
+package com.github.sadikovi;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Image of the global environment after running a prelude, see `--snapshot` and `--prelude` flags.
+ * Loading an image defines globals, functions, classes and instances of the prelude without
+ * scanning, parsing, resolving and executing its source.
+ *
+ * image        -> MAGIC VERSION int(length) ast envs functions classes instances values fields ;
+ * ast          -> AstFormat file with a declaration per function, lambdas are expression
+ *                 statements ;
+ * envs         -> int(count) ( int(enclosing) )* , environment 0 is the global environment ;
+ * functions    -> int(count) ( int(declaration) int(closure) byte(isInitializer) )* ;
+ * classes      -> int(count) ( string(name) int(superclass) members members )* ;
+ * members      -> int(count) ( string(name) int(function) )* ;
+ * instances    -> int(count) ( int(class) )* ;
+ * values       -> ( int(count) ( string(name) value )* )* for every environment ;
+ * fields       -> ( int(count) ( string(name) value )* )* for every instance ;
+ * value        -> byte(tag) payload ;
+ *
+ * Objects are referenced by index within their section. Environments are ordered so that the
+ * enclosing environment precedes the nested ones and classes so that the superclass precedes
+ * subclasses, which lets the reader create objects in one pass and fill variables and fields
+ * afterwards. Natives are stored by global name and resolved against natives of the interpreter
+ * that loads the image, native instances such as arrays and maps are not supported.
+ */
+final class Snapshot {
+  private Snapshot() { }
+
+  static final byte[] MAGIC = new byte[] { 'L', 'O', 'X', 'I' };
+  static final byte VERSION = 1;
+
+  // Value tags
+  private static final byte NIL = 0;
+  private static final byte TRUE = 1;
+  private static final byte FALSE = 2;
+  private static final byte NUMBER = 3;
+  private static final byte STRING = 4;
+  private static final byte UNINITIALISED = 5;
+  private static final byte NATIVE = 6;
+  private static final byte FUNCTION = 7;
+  private static final byte CLASS = 8;
+  private static final byte INSTANCE = 9;
+
+  /** Returns true if buffer starts with the image magic */
+  static boolean hasMagic(ByteBuffer buffer) {
+    if (buffer.remaining() < MAGIC.length) return false;
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (buffer.get(buffer.position() + i) != MAGIC[i]) return false;
+    }
+    return true;
+  }
+
+  /** Returns image of the global environment of the interpreter */
+  static byte[] write(Interpreter interpreter) {
+    return new Writer(interpreter).write();
+  }
+
+  /** Defines globals of the image in the interpreter, natives must be defined already */
+  static void read(ByteBuffer buffer, Interpreter interpreter) {
+    new Reader(buffer, interpreter).read();
+  }
+
+  private static class Writer {
+    private final Interpreter interpreter;
+    private final Map<Object, String> natives;
+    private final Map<Object, Integer> ids = new IdentityHashMap<Object, Integer>();
+    private final List<Environment> envs = new ArrayList<Environment>();
+    private final List<LoxFunction> functions = new ArrayList<LoxFunction>();
+    private final List<LoxClass> classes = new ArrayList<LoxClass>();
+    private final List<LoxInstance> instances = new ArrayList<LoxInstance>();
+    private final Map<List<Stmt>, Integer> bodies = new IdentityHashMap<List<Stmt>, Integer>();
+    private final List<Stmt> declarations = new ArrayList<Stmt>();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    Writer(Interpreter interpreter) {
+      this.interpreter = interpreter;
+      this.natives = interpreter.natives;
+    }
+
+    byte[] write() {
+      collect(interpreter.globals);
+      Collections.sort(envs, new Comparator<Environment>() {
+        @Override
+        public int compare(Environment a, Environment b) {
+          return Integer.compare(depth(a), depth(b));
+        }
+      });
+      Collections.sort(classes, new Comparator<LoxClass>() {
+        @Override
+        public int compare(LoxClass a, LoxClass b) {
+          return Integer.compare(depth(a), depth(b));
+        }
+      });
+      renumber(envs);
+      renumber(classes);
+
+      out.write(MAGIC, 0, MAGIC.length);
+      out.write(VERSION);
+      byte[] ast = new AstWriter(interpreter).write(declarations);
+      writeInt(ast.length);
+      out.write(ast, 0, ast.length);
+
+      writeInt(envs.size());
+      for (Environment env : envs) {
+        writeInt(env.enclosing == null ? -1 : ids.get(env.enclosing));
+      }
+      writeInt(functions.size());
+      for (LoxFunction function : functions) {
+        writeInt(bodies.get(function.body));
+        writeInt(ids.get(function.closure));
+        out.write(function.isInitializer ? 1 : 0);
+      }
+      writeInt(classes.size());
+      for (LoxClass klass : classes) {
+        writeString(klass.name);
+        writeInt(klass.superclass == null ? -1 : ids.get(klass.superclass));
+        writeMembers(klass.methods);
+        writeMembers(klass.classMethods);
+      }
+      writeInt(instances.size());
+      for (LoxInstance instance : instances) {
+        writeInt(ids.get(instance.klass));
+      }
+      for (Environment env : envs) {
+        writeValues(env.values());
+      }
+      for (LoxInstance instance : instances) {
+        writeValues(instance.fields);
+      }
+      return out.toByteArray();
+    }
+
+    /** Assigns ids to objects reachable from the value */
+    private void collect(Object value) {
+      if (value == null || ids.containsKey(value) || natives.containsKey(value)) return;
+      if (value instanceof Environment) {
+        Environment env = (Environment) value;
+        ids.put(env, envs.size());
+        envs.add(env);
+        collect(env.enclosing);
+        for (Object item : env.values().values()) collect(item);
+      } else if (value instanceof LoxFunction) {
+        LoxFunction function = (LoxFunction) value;
+        ids.put(function, functions.size());
+        functions.add(function);
+        declare(function);
+        collect(function.closure);
+      } else if (value instanceof LoxClass) {
+        LoxClass klass = (LoxClass) value;
+        ids.put(klass, classes.size());
+        classes.add(klass);
+        collect(klass.superclass);
+        for (LoxFunction method : klass.methods.values()) collect(method);
+        for (LoxFunction method : klass.classMethods.values()) collect(method);
+      } else if (value instanceof LoxInstance) {
+        LoxInstance instance = (LoxInstance) value;
+        ids.put(instance, instances.size());
+        instances.add(instance);
+        collect(instance.klass);
+        for (Object item : instance.fields.values()) collect(item);
+      } else if (!(value instanceof Boolean || value instanceof Double || value instanceof String ||
+          !Environment.isInitialised(value))) {
+        throw new IllegalArgumentException("Cannot snapshot " + Interpreter.stringify(value));
+      }
+    }
+
+    /** Adds declaration of the function body unless the body is shared with another function */
+    private void declare(LoxFunction function) {
+      if (bodies.containsKey(function.body)) return;
+      bodies.put(function.body, declarations.size());
+      if (function.isLambda()) {
+        Token keyword = new Token(TokenType.FUN, "fun", null, 0);
+        declarations.add(new Stmt.Expression(
+          new Expr.Lambda(keyword, function.params, function.body)));
+      } else {
+        declarations.add(new Stmt.Function(function.name, function.params, function.body));
+      }
+    }
+
+    private void renumber(List<?> objects) {
+      for (int i = 0; i < objects.size(); i++) {
+        ids.put(objects.get(i), i);
+      }
+    }
+
+    private int depth(Environment env) {
+      int depth = 0;
+      for (Environment e = env.enclosing; e != null; e = e.enclosing) depth++;
+      return depth;
+    }
+
+    private int depth(LoxClass klass) {
+      int depth = 0;
+      for (LoxClass k = klass.superclass; k != null; k = k.superclass) depth++;
+      return depth;
+    }
+
+    private void writeMembers(Map<String, LoxFunction> members) {
+      writeInt(members.size());
+      for (Map.Entry<String, LoxFunction> entry : members.entrySet()) {
+        writeString(entry.getKey());
+        writeInt(ids.get(entry.getValue()));
+      }
+    }
+
+    private void writeValues(Map<String, Object> values) {
+      writeInt(values.size());
+      for (Map.Entry<String, Object> entry : values.entrySet()) {
+        writeString(entry.getKey());
+        writeValue(entry.getValue());
+      }
+    }
+
+    private void writeValue(Object value) {
+      if (value == null) {
+        out.write(NIL);
+      } else if (value instanceof Boolean) {
+        out.write((Boolean) value ? TRUE : FALSE);
+      } else if (value instanceof Double) {
+        out.write(NUMBER);
+        writeLong(Double.doubleToLongBits((Double) value));
+      } else if (value instanceof String) {
+        out.write(STRING);
+        writeString((String) value);
+      } else if (!Environment.isInitialised(value)) {
+        out.write(UNINITIALISED);
+      } else if (natives.containsKey(value)) {
+        out.write(NATIVE);
+        writeString(natives.get(value));
+      } else if (value instanceof LoxFunction) {
+        out.write(FUNCTION);
+        writeInt(ids.get(value));
+      } else if (value instanceof LoxClass) {
+        out.write(CLASS);
+        writeInt(ids.get(value));
+      } else {
+        out.write(INSTANCE);
+        writeInt(ids.get(value));
+      }
+    }
+
+    private void writeString(String value) {
+      byte[] bytes = value.getBytes(AstFormat.UTF8);
+      writeInt(bytes.length);
+      out.write(bytes, 0, bytes.length);
+    }
+
+    private void writeInt(int value) {
+      for (int i = 3; i >= 0; i--) {
+        out.write(value >>> (i * 8));
+      }
+    }
+
+    private void writeLong(long value) {
+      writeInt((int) (value >>> 32));
+      writeInt((int) value);
+    }
+  }
+
+  private static class Reader {
+    private final ByteBuffer buffer;
+    private final Interpreter interpreter;
+    private final Map<String, Object> natives = new HashMap<String, Object>();
+    private Environment[] envs;
+    private LoxFunction[] functions;
+    private LoxClass[] classes;
+    private LoxInstance[] instances;
+
+    Reader(ByteBuffer buffer, Interpreter interpreter) {
+      this.buffer = buffer;
+      this.interpreter = interpreter;
+      // natives are captured before globals of the image can redefine them
+      natives.putAll(interpreter.globals.values());
+    }
+
+    void read() {
+      if (!hasMagic(buffer)) throw new AstReader.FormatError("Not a Lox image");
+      try {
+        buffer.position(buffer.position() + MAGIC.length);
+        byte version = buffer.get();
+        if (version != VERSION) {
+          throw new AstReader.FormatError("Unsupported image version " + version);
+        }
+        readObjects();
+      } catch (BufferUnderflowException err) {
+        throw new AstReader.FormatError("Truncated image");
+      }
+    }
+
+    private void readObjects() {
+      int length = readCount();
+      ByteBuffer ast = buffer.slice();
+      ast.limit(length);
+      List<Stmt> declarations = new AstReader(ast, interpreter).read();
+      buffer.position(buffer.position() + length);
+
+      envs = new Environment[readCount()];
+      for (int i = 0; i < envs.length; i++) {
+        int enclosing = buffer.getInt();
+        envs[i] = (enclosing < 0) ? interpreter.globals
+          : new Environment(envs[index(enclosing, i)]);
+      }
+      functions = new LoxFunction[readCount()];
+      for (int i = 0; i < functions.length; i++) {
+        Stmt declaration = declarations.get(index(buffer.getInt(), declarations.size()));
+        Environment closure = envs[index(buffer.getInt(), envs.length)];
+        boolean isInitializer = buffer.get() != 0;
+        if (declaration instanceof Stmt.Function) {
+          Stmt.Function f = (Stmt.Function) declaration;
+          functions[i] = new LoxFunction(f.name, f.params, f.body, closure, isInitializer);
+        } else if (declaration instanceof Stmt.Expression &&
+            ((Stmt.Expression) declaration).expression instanceof Expr.Lambda) {
+          Expr.Lambda f = (Expr.Lambda) ((Stmt.Expression) declaration).expression;
+          functions[i] = new LoxFunction(null, f.params, f.body, closure, isInitializer);
+        } else {
+          throw new AstReader.FormatError("Invalid function declaration");
+        }
+      }
+      classes = new LoxClass[readCount()];
+      for (int i = 0; i < classes.length; i++) {
+        String name = readString();
+        int superclass = buffer.getInt();
+        Map<String, LoxFunction> methods = readMembers();
+        Map<String, LoxFunction> classMethods = readMembers();
+        classes[i] = new LoxClass(name, (superclass < 0) ? null : classes[index(superclass, i)],
+          methods, classMethods);
+      }
+      instances = new LoxInstance[readCount()];
+      for (int i = 0; i < instances.length; i++) {
+        instances[i] = new LoxInstance(classes[index(buffer.getInt(), classes.length)]);
+      }
+
+      for (Environment env : envs) {
+        int count = readCount();
+        for (int i = 0; i < count; i++) {
+          String name = readString();
+          byte tag = buffer.get();
+          if (tag == UNINITIALISED) {
+            env.define(name);
+          } else {
+            env.define(name, readValue(tag));
+          }
+        }
+      }
+      for (LoxInstance instance : instances) {
+        int count = readCount();
+        for (int i = 0; i < count; i++) {
+          String name = readString();
+          instance.fields.put(name, readValue(buffer.get()));
+        }
+      }
+    }
+
+    private Map<String, LoxFunction> readMembers() {
+      int count = readCount();
+      Map<String, LoxFunction> members = new HashMap<String, LoxFunction>();
+      for (int i = 0; i < count; i++) {
+        String name = readString();
+        members.put(name, functions[index(buffer.getInt(), functions.length)]);
+      }
+      return members;
+    }
+
+    private Object readValue(byte tag) {
+      switch (tag) {
+        case NIL:
+          return null;
+        case TRUE:
+          return true;
+        case FALSE:
+          return false;
+        case NUMBER:
+          return buffer.getDouble();
+        case STRING:
+          return readString();
+        case NATIVE: {
+          String name = readString();
+          Object value = natives.get(name);
+          if (!(value instanceof LoxCallable)) {
+            throw new AstReader.FormatError("Native '" + name + "' is not defined");
+          }
+          return value;
+        }
+        case FUNCTION:
+          return functions[index(buffer.getInt(), functions.length)];
+        case CLASS:
+          return classes[index(buffer.getInt(), classes.length)];
+        case INSTANCE:
+          return instances[index(buffer.getInt(), instances.length)];
+        default:
+          throw new AstReader.FormatError("Invalid value tag " + tag);
+      }
+    }
+
+    private String readString() {
+      byte[] bytes = new byte[readCount()];
+      buffer.get(bytes);
+      return new String(bytes, AstFormat.UTF8);
+    }
+
+    /** Returns count of elements or bytes that follow, every element takes at least one byte */
+    private int readCount() {
+      int count = buffer.getInt();
+      if (count < 0) throw new AstReader.FormatError("Invalid count " + count);
+      if (count > buffer.remaining()) throw new BufferUnderflowException();
+      return count;
+    }
+
+    /** Checks reference to an object that is read already */
+    private static int index(int index, int size) {
+      if (index < 0 || index >= size) throw new AstReader.FormatError("Invalid reference " + index);
+      return index;
+    }
+  }
+}
@@ -0,0 +1,296 @@
+package com.github.sadikovi;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Wall time and allocated bytes of the front-end phases and evaluation, see `--stats` flag.
+ * Allocations are measured for the current thread only. Each phase is also emitted as a JFR event
+ * while recording, see LoxEvents.
+ */
+class Stats {
+  enum Phase {
+    LOAD, SCAN, PARSE, RESOLVE, EVAL
+  }
+
+  private final boolean enabled;
+  private final com.sun.management.ThreadMXBean threads;
+  private final long[] nanos = new long[Phase.values().length];
+  private final long[] bytes = new long[Phase.values().length];
+  private final boolean[] measured = new boolean[Phase.values().length];
+  private LoxEvents.Phase event;
+  private long startNanos;
+  private long startBytes;
+  private long tokens = -1;
+  private long nodes = -1;
+
+  Stats(boolean enabled) {
+    this.enabled = enabled;
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (enabled && bean instanceof com.sun.management.ThreadMXBean &&
+        ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+      this.threads = (com.sun.management.ThreadMXBean) bean;
+    } else {
+      this.threads = null;
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Starts measuring a phase */
+  public void start() {
+    if (LoxEvents.isRecording()) {
+      event = new LoxEvents.Phase();
+      event.begin();
+    }
+    if (!enabled) return;
+    startBytes = allocatedBytes();
+    startNanos = System.nanoTime();
+  }
+
+  /** Stops measuring and adds time and allocations since `start` to the phase */
+  public void stop(Phase phase) {
+    if (event != null) {
+      event.end();
+      if (event.shouldCommit()) {
+        event.phase = phase.name().toLowerCase();
+        event.commit();
+      }
+    }
+    event = null;
+    if (!enabled) return;
+    long elapsed = System.nanoTime() - startNanos;
+    nanos[phase.ordinal()] += elapsed;
+    bytes[phase.ordinal()] += allocatedBytes() - startBytes;
+    measured[phase.ordinal()] = true;
+  }
+
+  public void addTokens(int count) {
+    if (!enabled) return;
+    tokens = Math.max(tokens, 0) + count;
+  }
+
+  public void addNodes(List<Stmt> statements) {
+    if (!enabled) return;
+    NodeCounter counter = new NodeCounter();
+    counter.count(statements);
+    nodes = Math.max(nodes, 0) + counter.nodes;
+  }
+
+  public void print(PrintStream out) {
+    if (!enabled) return;
+    out.println("== Stats ==");
+    out.println(String.format("%-8s %12s %16s", "phase", "time (ms)", "allocated (KB)"));
+    for (Phase phase : Phase.values()) {
+      if (!measured[phase.ordinal()]) continue;
+      String allocated = (threads == null) ? "n/a" :
+        String.format("%,d", bytes[phase.ordinal()] / 1024);
+      out.println(String.format("%-8s %12.3f %16s",
+        phase.name().toLowerCase(), nanos[phase.ordinal()] / 1e6, allocated));
+    }
+    out.println("tokens: " + (tokens < 0 ? "n/a" : tokens) +
+      ", nodes: " + (nodes < 0 ? "n/a" : nodes));
+  }
+
+  private long allocatedBytes() {
+    return (threads == null) ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Counts statements and expressions, bodies that are not parsed yet are skipped.
+   * Function and lambda bodies are counted through `countBody`, see Retention.
+   */
+  static class NodeCounter implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    long nodes = 0;
+
+    void countBody(List<Stmt> body) {
+      count(body);
+    }
+
+    void count(List<? extends Stmt> statements) {
+      if (statements == null) return;
+      if (statements instanceof LazyBody && !((LazyBody) statements).isLoaded()) return;
+      for (Stmt statement : statements) {
+        count(statement);
+      }
+    }
+
+    void count(Stmt statement) {
+      if (statement != null) statement.accept(this);
+    }
+
+    void count(Expr expr) {
+      if (expr != null) expr.accept(this);
+    }
+
+    @Override
+    public Void visit(Stmt.Block stmt) {
+      nodes++;
+      count(stmt.statements);
+      return null;
+    }
+
+    @Override
+    public Void visit(Stmt.Break stmt) {
+      nodes++;
+      return null;
+    }
+
+    @Override
+    public Void visit(Stmt.Class stmt) {
+      nodes++;
+      count(stmt.superclass);
+      count(stmt.methods);
+      count(stmt.classMethods);
+      return null;
+    }
+
+    @Override
+    public Void visit(Stmt.Expression stmt) {
+      nodes++;
+      count(stmt.expression);
+      return null;
+    }
+
+    @Override
+    public Void visit(Stmt.Function stmt) {
+      nodes++;
+      countBody(stmt.body);
+      return null;
+    }
+
+    @Override
+    public Void visit(Stmt.If stmt) {
+      nodes++;
+      count(stmt.condition);
+      count(stmt.thenBranch);
+      count(stmt.elseBranch);
+      return null;
+    }
+
+    @Override
+    public Void visit(Stmt.Print stmt) {
+      nodes++;
+      count(stmt.expression);
+      return null;
+    }
+
+    @Override
+    public Void visit(Stmt.Return stmt) {
+      nodes++;
+      count(stmt.value);
+      return null;
+    }
+
+    @Override
+    public Void visit(Stmt.While stmt) {
+      nodes++;
+      count(stmt.condition);
+      count(stmt.body);
+      return null;
+    }
+
+    @Override
+    public Void visit(Stmt.Var stmt) {
+      nodes++;
+      count(stmt.expression);
+      return null;
+    }
+
+    @Override
+    public Void visit(Expr.Assign expr) {
+      nodes++;
+      count(expr.expression);
+      return null;
+    }
+
+    @Override
+    public Void visit(Expr.Binary expr) {
+      nodes++;
+      count(expr.left);
+      count(expr.right);
+      return null;
+    }
+
+    @Override
+    public Void visit(Expr.Call expr) {
+      nodes++;
+      count(expr.callee);
+      for (Expr argument : expr.arguments) {
+        count(argument);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visit(Expr.Get expr) {
+      nodes++;
+      count(expr.object);
+      return null;
+    }
+
+    @Override
+    public Void visit(Expr.Grouping expr) {
+      nodes++;
+      count(expr.expression);
+      return null;
+    }
+
+    @Override
+    public Void visit(Expr.Lambda expr) {
+      nodes++;
+      countBody(expr.body);
+      return null;
+    }
+
+    @Override
+    public Void visit(Expr.Literal expr) {
+      nodes++;
+      return null;
+    }
+
+    @Override
+    public Void visit(Expr.Logical expr) {
+      nodes++;
+      count(expr.left);
+      count(expr.right);
+      return null;
+    }
+
+    @Override
+    public Void visit(Expr.Set expr) {
+      nodes++;
+      count(expr.object);
+      count(expr.value);
+      return null;
+    }
+
+    @Override
+    public Void visit(Expr.Super expr) {
+      nodes++;
+      return null;
+    }
+
+    @Override
+    public Void visit(Expr.This expr) {
+      nodes++;
+      return null;
+    }
+
+    @Override
+    public Void visit(Expr.Unary expr) {
+      nodes++;
+      count(expr.right);
+      return null;
+    }
+
+    @Override
+    public Void visit(Expr.Variable expr) {
+      nodes++;
+      return null;
+    }
+  }
+}
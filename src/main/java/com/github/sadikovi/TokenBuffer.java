@@ -0,0 +1,125 @@
+package com.github.sadikovi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Scanned tokens stored as parallel arrays of token type, start offset, length and line.
+ * Token objects with lexemes and literals are only created when requested, see Scanner.token.
+ */
+class TokenBuffer {
+  private static final TokenType[] TOKEN_TYPES = TokenType.values();
+  private static final int INITIAL_CAPACITY = 256;
+
+  private char[] source;
+  private byte[] types;
+  private int[] starts;
+  private int[] lengths;
+  private int[] lines;
+  private int size;
+
+  TokenBuffer() {
+    this.types = new byte[INITIAL_CAPACITY];
+    this.starts = new int[INITIAL_CAPACITY];
+    this.lengths = new int[INITIAL_CAPACITY];
+    this.lines = new int[INITIAL_CAPACITY];
+    this.size = 0;
+  }
+
+  /** Adds token for characters in range [start, end) of the source */
+  void add(TokenType type, int start, int end, int line) {
+    if (size == types.length) {
+      int capacity = size * 2;
+      types = Arrays.copyOf(types, capacity);
+      starts = Arrays.copyOf(starts, capacity);
+      lengths = Arrays.copyOf(lengths, capacity);
+      lines = Arrays.copyOf(lines, capacity);
+    }
+    types[size] = (byte) type.ordinal();
+    starts[size] = start;
+    lengths[size] = end - start;
+    lines[size] = line;
+    size++;
+  }
+
+  /** Sets source that token offsets refer to */
+  void setSource(char[] source) {
+    this.source = source;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public TokenType type(int index) {
+    return TOKEN_TYPES[types[index]];
+  }
+
+  public int line(int index) {
+    return lines[index];
+  }
+
+  /** Creates token at index */
+  public Token token(int index) {
+    int start = starts[index];
+    return Scanner.token(source, type(index), start, start + lengths[index], lines[index]);
+  }
+
+  /** Creates all tokens, mostly for debugging */
+  public List<Token> toList() {
+    List<Token> tokens = new ArrayList<Token>(size);
+    for (int i = 0; i < size; i++) {
+      tokens.add(token(i));
+    }
+    return tokens;
+  }
+
+  /** Returns stream over all tokens, buffer must end with EOF token */
+  public Cursor stream() {
+    return new Cursor(0, size - 1);
+  }
+
+  /** Returns stream over tokens in range [from, to), token at `to` is treated as EOF */
+  public Cursor stream(int from, int to) {
+    return new Cursor(from, to);
+  }
+
+  /** Token stream over a range of the buffer */
+  class Cursor implements TokenStream {
+    private final int end; // index of EOF token
+    private int current;
+    private Token token; // current token, created on demand
+
+    Cursor(int from, int to) {
+      this.end = to;
+      this.current = from;
+    }
+
+    /** Returns index of the current token in the buffer */
+    public int position() {
+      return current;
+    }
+
+    @Override
+    public TokenType peekType() {
+      return (current == end) ? TokenType.EOF : type(current);
+    }
+
+    @Override
+    public Token peek() {
+      if (token == null) {
+        token = (current == end) ? new Token(TokenType.EOF, "", null, line(end)) : token(current);
+      }
+      return token;
+    }
+
+    @Override
+    public void advance() {
+      if (current < end) {
+        current++;
+        token = null;
+      }
+    }
+  }
+}
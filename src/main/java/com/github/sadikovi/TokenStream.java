@@ -0,0 +1,16 @@
+package com.github.sadikovi;
+
+/**
+ * Sequence of tokens that parser consumes one at a time.
+ * Stream ends with EOF token that is returned for all subsequent calls.
+ */
+interface TokenStream {
+  /** Returns type of the current token without advancing */
+  TokenType peekType();
+
+  /** Returns the current token without advancing */
+  Token peek();
+
+  /** Moves to the next token */
+  void advance();
+}
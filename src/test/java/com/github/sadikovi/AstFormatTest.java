@@ -0,0 +1,131 @@
+package com.github.sadikovi;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AstFormatTest {
+  private static final String PROGRAM =
+    "class A { init(x) { this.x = x; } get { return this.x; } class make() { return A(-1.5); } }\n" +
+    "class B < A { init(x) { super.init(x * 2); } }\n" +
+    "fun counter() { var c = 0; return fun () { c = c + 1; return c; }; }\n" +
+    "var next = counter();\n" +
+    "next();\n" +
+    "print next();\n" +
+    "print B(3).get;\n" +
+    "print A.make().get;\n" +
+    "for (var i = 0; i < 3; i = i + 1) { if (i == 1) break; print \"i\" + \"=\"; }\n" +
+    "print nil == false or !true and 100000000 > 0.001;\n";
+
+  /** Parses and resolves the program and returns its compiled form */
+  private static byte[] compile(String source) {
+    Interpreter interpreter = new Interpreter();
+    Lox.deferErrors();
+    try {
+      List<Stmt> statements = TestUtils.parse(source);
+      new Resolver(interpreter).resolve(statements);
+      return new AstWriter(interpreter).write(statements);
+    } finally {
+      assertTrue(Lox.collectErrors().isEmpty());
+    }
+  }
+
+  @Test
+  public void testRoundTrip() {
+    byte[] bytes = compile(PROGRAM);
+    assertTrue(AstFormat.hasMagic(ByteBuffer.wrap(bytes)));
+
+    Interpreter interpreter = new Interpreter();
+    List<Stmt> statements = new AstReader(ByteBuffer.wrap(bytes), interpreter).read();
+    assertEquals(new AstPrinter().print(TestUtils.parse(PROGRAM)),
+      new AstPrinter().print(statements));
+
+    TestUtils.Result expected = TestUtils.run(PROGRAM);
+    TestUtils.Result actual = TestUtils.interpret(interpreter, statements);
+    assertEquals("2\n6\n-1.5\ni=\nfalse\n", expected.output);
+    assertEquals(expected.output, actual.output);
+    assertTrue(actual.errors.isEmpty());
+  }
+
+  @Test
+  public void testTokenLines() {
+    byte[] bytes = compile("var a = 1;\n\n\nprint a +\n  nil;\n");
+    Interpreter interpreter = new Interpreter();
+    List<Stmt> statements = new AstReader(ByteBuffer.wrap(bytes), interpreter).read();
+    TestUtils.Result result = TestUtils.interpret(interpreter, statements);
+    assertEquals(1, result.errors.size());
+    assertTrue(result.errors.get(0), result.errors.get(0).endsWith("[line 4]"));
+  }
+
+  @Test(expected = AstReader.FormatError.class)
+  public void testInvalidMagic() {
+    new AstReader(ByteBuffer.wrap(new byte[] { 'L', 'O', 'X' }), new Interpreter()).read();
+  }
+
+  @Test
+  public void testTruncatedFile() {
+    byte[] bytes = compile(PROGRAM);
+    for (int length = AstFormat.MAGIC.length; length < bytes.length; length++) {
+      try {
+        new AstReader(ByteBuffer.wrap(bytes, 0, length), new Interpreter()).read();
+        fail("Read file truncated to " + length + " bytes");
+      } catch (AstReader.FormatError err) {
+        // expected
+      }
+    }
+    try {
+      new AstReader(ByteBuffer.wrap(bytes, 0, bytes.length - 1), new Interpreter()).read();
+      fail();
+    } catch (AstReader.FormatError err) {
+      assertEquals("Truncated file", err.getMessage());
+    }
+  }
+
+  @Test
+  public void testInvalidBytes() {
+    // Every corrupted byte either reads into some statements or fails with FormatError
+    byte[] bytes = compile(PROGRAM);
+    byte[] values = new byte[] { 0x7F, (byte) 0x80, (byte) 0xFF, 100, 0 };
+    for (int i = AstFormat.MAGIC.length + 1; i < bytes.length; i++) {
+      for (byte value : values) {
+        byte[] corrupted = bytes.clone();
+        corrupted[i] = value;
+        try {
+          new AstReader(ByteBuffer.wrap(corrupted), new Interpreter()).read();
+        } catch (AstReader.FormatError err) {
+          // expected
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testInvalidTokenType() {
+    byte[] bytes = compile("print a;");
+    // Token type precedes the string index of the last token `a` and its depth
+    bytes[bytes.length - 3] = (byte) TokenType.values().length;
+    try {
+      new AstReader(ByteBuffer.wrap(bytes), new Interpreter()).read();
+      fail();
+    } catch (AstReader.FormatError err) {
+      assertEquals("Invalid token type " + TokenType.values().length, err.getMessage());
+    }
+    bytes[bytes.length - 3] = (byte) TokenType.IDENTIFIER.ordinal();
+    bytes[bytes.length - 2] = 100;
+    try {
+      new AstReader(ByteBuffer.wrap(bytes), new Interpreter()).read();
+      fail();
+    } catch (AstReader.FormatError err) {
+      assertEquals("Invalid string 100", err.getMessage());
+    }
+  }
+
+  @Test(expected = AstReader.FormatError.class)
+  public void testUnsupportedVersion() {
+    byte[] bytes = compile("print 1;");
+    bytes[AstFormat.MAGIC.length] = (byte) (AstFormat.VERSION + 1);
+    new AstReader(ByteBuffer.wrap(bytes), new Interpreter()).read();
+  }
+}
@@ -0,0 +1,132 @@
+package com.github.sadikovi;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BudgetTest {
+  private static String error(Interpreter interpreter, String source) {
+    TestUtils.Result result = TestUtils.run(interpreter, source);
+    assertEquals(result.errors.toString(), 1, result.errors.size());
+    return result.errors.get(0);
+  }
+
+  @Test
+  public void testMaxSteps() {
+    Interpreter interpreter = new Interpreter();
+    interpreter.budget.setMaxSteps(10);
+    // loop back-edges are counted
+    TestUtils.Result result = TestUtils.run(interpreter,
+      "for (var i = 0; i < 10; i = i + 1) { }\nprint \"done\";");
+    assertTrue(result.errors.toString(), result.errors.isEmpty());
+    String error = error(interpreter, "for (var i = 0; i < 11; i = i + 1) { }");
+    assertTrue(error, error.startsWith("Exceeded step budget of 10"));
+    // function entries are counted, counters are reset for every program
+    error = error(interpreter, "fun f(n) { if (n > 0) f(n - 1); }\nf(10);");
+    assertTrue(error, error.startsWith("Exceeded step budget of 10"));
+  }
+
+  @Test
+  public void testTimeout() {
+    Interpreter interpreter = new Interpreter();
+    interpreter.budget.setTimeoutMillis(50);
+    long start = System.nanoTime();
+    String error = error(interpreter, "while (true) { }");
+    assertTrue(error, error.startsWith("Exceeded timeout of 50 ms"));
+    assertTrue(System.nanoTime() - start >= 50000000L);
+  }
+
+  @Test
+  public void testMaxAllocations() {
+    Interpreter interpreter = new Interpreter();
+    interpreter.budget.setMaxAllocations(3);
+    TestUtils.Result result = TestUtils.run(interpreter,
+      "class A { }\nvar a = A();\nvar b = Array();\nvar c = Map();");
+    assertTrue(result.errors.toString(), result.errors.isEmpty());
+    String error = error(interpreter, "class A { }\nfor (var i = 0; i < 4; i = i + 1) { A(); }");
+    assertTrue(error, error.startsWith("Exceeded allocation budget of 3"));
+    // arrays returned by natives are counted
+    error = error(interpreter, "var m = Map();\nm.set(1, 2);\nm.keys();\nm.keys();\nm.keys();");
+    assertTrue(error, error.startsWith("Exceeded allocation budget of 3\n[line 5]"));
+  }
+
+  @Test
+  public void testCancel() throws InterruptedException {
+    final Interpreter interpreter = new Interpreter();
+    // cancellation before the program starts is pending, it stops the next program only
+    interpreter.budget.cancel();
+    String error = error(interpreter, "while (true) { }");
+    assertTrue(error, error.startsWith("Execution cancelled"));
+    TestUtils.Result result = TestUtils.run(interpreter,
+      "for (var i = 0; i < 10000; i = i + 1) { }\nprint \"done\";");
+    assertTrue(result.errors.toString(), result.errors.isEmpty());
+
+    Thread canceller = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(50);
+        } catch (InterruptedException err) {
+          return;
+        }
+        interpreter.budget.cancel();
+      }
+    });
+    canceller.start();
+    error = error(interpreter, "while (true) { }");
+    canceller.join();
+    assertTrue(error, error.startsWith("Execution cancelled"));
+  }
+
+  @Test
+  public void testLargeTimeout() {
+    Interpreter interpreter = new Interpreter();
+    interpreter.budget.setTimeoutMillis(Long.MAX_VALUE);
+    TestUtils.Result result = TestUtils.run(interpreter,
+      "for (var i = 0; i < 10000; i = i + 1) { }\nprint \"done\";");
+    assertTrue(result.errors.toString(), result.errors.isEmpty());
+    assertEquals("done\n", result.output);
+
+    interpreter.budget.setTimeoutMillis(Long.MAX_VALUE / 1000000L - 1);
+    result = TestUtils.run(interpreter, "for (var i = 0; i < 10000; i = i + 1) { }");
+    assertTrue(result.errors.toString(), result.errors.isEmpty());
+  }
+
+  @Test
+  public void testSetLimits() {
+    Budget budget = new Budget();
+    budget.setMaxSteps(1);
+    Budget copy = new Budget();
+    copy.setLimits(budget);
+    copy.reset();
+    copy.step(null);
+    try {
+      copy.step(null);
+      fail("Expected step budget error");
+    } catch (RuntimeError err) {
+      assertEquals("Exceeded step budget of 1", err.getMessage());
+    }
+  }
+
+  @Test
+  public void testInvalidLimits() {
+    Budget budget = new Budget();
+    try {
+      budget.setMaxSteps(0);
+      fail("Expected invalid limit");
+    } catch (IllegalArgumentException err) {
+      assertEquals("Max steps must be positive", err.getMessage());
+    }
+    try {
+      budget.setTimeoutMillis(-1);
+      fail("Expected invalid limit");
+    } catch (IllegalArgumentException err) {
+      assertEquals("Timeout must be positive", err.getMessage());
+    }
+    try {
+      budget.setMaxAllocations(0);
+      fail("Expected invalid limit");
+    } catch (IllegalArgumentException err) {
+      assertEquals("Max allocations must be positive", err.getMessage());
+    }
+  }
+}
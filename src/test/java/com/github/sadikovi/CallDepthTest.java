@@ -0,0 +1,92 @@
+package com.github.sadikovi;
+
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CallDepthTest {
+  // Recursion of `depth` nested calls with a few nested blocks and loops in the body
+  private static final String SOURCE =
+    "fun f(n) {\n" +
+    "  while (true) {\n" +
+    "    for (var i = 0; i < 1; i = i + 1) {\n" +
+    "      if (n > 1) { return f(n - 1) + 1; }\n" +
+    "    }\n" +
+    "    return 1;\n" +
+    "  }\n" +
+    "}\n" +
+    "print f(depth);\n";
+
+  /** Runs `depth` nested calls with maximum depth on a thread sized like the Lox main thread */
+  private static TestUtils.Result run(final int maxDepth, int depth) throws InterruptedException {
+    final String source = "var depth = " + depth + ";\n" + SOURCE;
+    final TestUtils.Result[] result = new TestUtils.Result[1];
+    Thread thread = new Thread(null, new Runnable() {
+      @Override
+      public void run() {
+        Interpreter interpreter = new Interpreter();
+        interpreter.setMaxDepth(maxDepth);
+        result[0] = TestUtils.run(interpreter, source);
+      }
+    }, "lox-test", Lox.stackSize(maxDepth));
+    thread.start();
+    thread.join();
+    return result[0];
+  }
+
+  @Test
+  public void testDefaultDepth() throws InterruptedException {
+    int depth = Interpreter.DEFAULT_MAX_DEPTH;
+    TestUtils.Result result = run(depth, depth);
+    assertTrue(result.errors.toString(), result.errors.isEmpty());
+    assertEquals(depth + "\n", result.output);
+
+    result = run(depth, depth + 1);
+    assertEquals("", result.output);
+    assertEquals(1, result.errors.size());
+    assertTrue(result.errors.get(0),
+      result.errors.get(0).startsWith("Stack overflow, maximum call depth is " + depth));
+  }
+
+  @Test
+  public void testMaxDepth() throws InterruptedException {
+    for (int depth : new int[] { 1, 2, 100, 50000 }) {
+      TestUtils.Result result = run(depth, depth);
+      assertTrue(result.errors.toString(), result.errors.isEmpty());
+      assertEquals(depth + "\n", result.output);
+
+      result = run(depth, depth + 1);
+      assertEquals(1, result.errors.size());
+      assertTrue(result.errors.get(0),
+        result.errors.get(0).startsWith("Stack overflow, maximum call depth is " + depth));
+    }
+  }
+
+  @Test
+  public void testStackTrace() throws InterruptedException {
+    TestUtils.Result result = run(100, 101);
+    String[] lines = result.errors.get(0).split("\n");
+    // message, line, 10 top frames, skipped frames, 10 bottom frames and the script frame
+    assertEquals(24, lines.length);
+    assertEquals("  at f [line 5]", lines[2]);
+    assertEquals("  ... 80 more", lines[12]);
+    assertEquals("  at <script> [line 10]", lines[23]);
+  }
+
+  @Test
+  public void testInvalidMaxDepth() {
+    Interpreter interpreter = new Interpreter();
+    interpreter.setMaxDepth(Interpreter.MAX_DEPTH);
+    for (int depth : new int[] { 0, -1, Interpreter.MAX_DEPTH + 1 }) {
+      try {
+        interpreter.setMaxDepth(depth);
+        fail("Expected invalid depth " + depth);
+      } catch (IllegalArgumentException err) {
+        assertEquals("Max depth must be between 1 and " + Interpreter.MAX_DEPTH, err.getMessage());
+      }
+    }
+    assertEquals(Interpreter.MAX_DEPTH, interpreter.maxDepth);
+    assertEquals(1L << 30, Lox.stackSize(Interpreter.MAX_DEPTH));
+  }
+}
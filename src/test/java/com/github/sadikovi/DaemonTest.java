@@ -0,0 +1,175 @@
+package com.github.sadikovi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DaemonTest {
+  private static final int THREADS = 2;
+
+  private Path root;
+  private Path outside;
+  private ServerSocket server;
+  private Daemon daemon;
+  private Thread thread;
+
+  /** Status and output of a request */
+  private static class Response {
+    final int status;
+    final String out;
+    final String err;
+
+    Response(int status, String out, String err) {
+      this.status = status;
+      this.out = out;
+      this.err = err;
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("daemon");
+    outside = Files.createTempFile("outside", ".lox");
+    Files.write(root.resolve("script.lox"), "print \"caf\u00e9\";".getBytes(AstFormat.UTF8));
+    Files.write(outside, "print 1;".getBytes(AstFormat.UTF8));
+
+    server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    daemon = new Daemon(server.getLocalPort(), THREADS, Lox.stackSize(1000), new Interpreter(),
+      null, root);
+    daemon.setReadTimeout(200);
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          daemon.serve(server);
+        } catch (IOException err) {
+          // server socket is closed
+        }
+      }
+    });
+    thread.start();
+  }
+
+  @After
+  public void tearDown() throws IOException, InterruptedException {
+    server.close();
+    thread.join();
+    Files.delete(root.resolve("script.lox"));
+    Files.delete(root);
+    Files.delete(outside);
+  }
+
+  private Response send(String request) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    int status = Daemon.connect(server.getLocalPort(), request,
+      new PrintStream(out, true, "UTF-8"), new PrintStream(err, true, "UTF-8"));
+    return new Response(status, out.toString("UTF-8"), err.toString("UTF-8"));
+  }
+
+  /** Sends raw bytes and returns the error frame and exit status of the response */
+  private String sendRaw(byte[] bytes) throws IOException {
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort())) {
+      socket.getOutputStream().write(bytes);
+      socket.getOutputStream().flush();
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      assertEquals(Daemon.ERR, in.readByte());
+      byte[] message = new byte[in.readInt()];
+      in.readFully(message);
+      assertEquals(Daemon.EXIT, in.readByte());
+      return new String(message, AstFormat.UTF8) + in.readInt();
+    }
+  }
+
+  @Test
+  public void testEval() throws IOException {
+    Response response = send("eval\nprint 1 + 2;");
+    assertEquals(0, response.status);
+    assertEquals("3\n", response.out);
+    assertEquals("", response.err);
+  }
+
+  @Test
+  public void testErrors() throws IOException {
+    Response response = send("eval\nprint ;");
+    assertEquals(64, response.status);
+    assertTrue(response.err, response.err.contains("Expected expression"));
+
+    response = send("eval\nprint 1; print nil + 1;");
+    assertEquals(70, response.status);
+    assertEquals("1\n", response.out);
+    assertTrue(response.err, response.err.contains("Both operands must be numbers or strings"));
+  }
+
+  @Test
+  public void testFreshGlobals() throws IOException {
+    assertEquals(0, send("eval\nvar x = 1;").status);
+    Response response = send("eval\nprint x;");
+    assertEquals(70, response.status);
+    assertTrue(response.err, response.err.contains("Undefined variable 'x'"));
+  }
+
+  @Test
+  public void testPoolIsBounded() throws IOException {
+    for (int i = 0; i < 10; i++) {
+      assertEquals(0, send("eval\nprint 1;").status);
+      assertEquals(66, send("bad").status);
+    }
+    assertTrue(daemon.pooled() <= THREADS);
+  }
+
+  @Test
+  public void testRun() throws IOException {
+    Response response = send("run " + root.resolve("script.lox"));
+    assertEquals(response.err, 0, response.status);
+    assertEquals("caf\u00e9\n", response.out);
+
+    assertEquals(0, send("run script.lox").status);
+  }
+
+  @Test
+  public void testRunOutsideOfRoot() throws IOException {
+    Response response = send("run " + outside);
+    assertEquals(66, response.status);
+    assertTrue(response.err, response.err.contains("is outside of"));
+
+    response = send("run ../" + outside.getFileName());
+    assertEquals(66, response.status);
+    assertEquals("", response.out);
+  }
+
+  @Test
+  public void testInvalidRequests() throws IOException {
+    Response response = send("exec\nprint 1;");
+    assertEquals(66, response.status);
+    assertTrue(response.err, response.err.contains("Invalid request 'exec'"));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new DataOutputStream(bytes).writeInt(Daemon.MAX_REQUEST_BYTES + 1);
+    String error = sendRaw(bytes.toByteArray());
+    assertTrue(error, error.contains("exceeds the limit"));
+    assertTrue(error, error.endsWith("66"));
+  }
+
+  @Test
+  public void testReadTimeout() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    // request is never completed
+    new DataOutputStream(bytes).writeInt(100);
+    String error = sendRaw(bytes.toByteArray());
+    assertTrue(error, error.contains("Cannot read request"));
+    assertTrue(error, error.endsWith("66"));
+  }
+}
@@ -0,0 +1,132 @@
+package com.github.sadikovi;
+
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IncrementalParserTest {
+  private static final String SOURCE =
+    "fun add(a, b) { return a + b; }\n" +
+    "var x = add(1, 2);\n" +
+    "print x;\n";
+
+  /** Parses source with errors collected, returns the errors */
+  private static List<String> parse(IncrementalParser parser, String source) {
+    List<String> errors;
+    Lox.deferErrors();
+    try {
+      parser.parse(source);
+    } finally {
+      errors = Lox.collectErrors();
+    }
+    return errors;
+  }
+
+  @Test
+  public void testCacheHits() {
+    Interpreter interpreter = new Interpreter();
+    IncrementalParser parser = new IncrementalParser(interpreter);
+    assertTrue(parse(parser, SOURCE).isEmpty());
+    assertEquals(3, parser.parsed());
+    assertEquals(0, parser.reused());
+
+    List<Stmt> statements = parser.parse(SOURCE);
+    assertEquals(0, parser.parsed());
+    assertEquals(3, parser.reused());
+    assertFalse(parser.hadError());
+    assertEquals("3\n", TestUtils.interpret(interpreter, statements).output);
+  }
+
+  @Test
+  public void testInvalidation() {
+    Interpreter interpreter = new Interpreter();
+    IncrementalParser parser = new IncrementalParser(interpreter);
+    parser.parse(SOURCE);
+
+    List<Stmt> statements = parser.parse(SOURCE.replace("add(1, 2)", "add(3, 4)"));
+    assertEquals(1, parser.parsed());
+    assertEquals(2, parser.reused());
+    assertEquals("7\n", TestUtils.interpret(interpreter, statements).output);
+
+    // Chunk that moves to another line is parsed again
+    parser.parse("\n" + SOURCE);
+    assertEquals(3, parser.parsed());
+    assertEquals(0, parser.reused());
+  }
+
+  @Test
+  public void testReusedResolution() {
+    Interpreter interpreter = new Interpreter();
+    IncrementalParser parser = new IncrementalParser(interpreter);
+    String counter =
+      "fun counter() { var n = 0; { var step = 1; return fun () { n = n + step; return n; }; } }\n";
+    String source = counter + "var c = counter();\nc();\nprint c();\n";
+    assertEquals("2\n", TestUtils.interpret(interpreter, parser.parse(source)).output);
+
+    // Neighbours with nested scopes change, the reused function keeps its resolution
+    source = counter + "{ var n = 10; { var step = 5; var c = counter(); c(); print c() + n; } }\n";
+    assertEquals("12\n", TestUtils.interpret(interpreter, parser.parse(source)).output);
+    assertEquals(1, parser.reused());
+  }
+
+  @Test
+  public void testRepeatedChunks() {
+    Interpreter interpreter = new Interpreter();
+    IncrementalParser parser = new IncrementalParser(interpreter);
+    String source = "{ var a = 1; print a; }\n{ var a = 1; print a; }\n";
+    List<Stmt> first = parser.parse(source);
+    assertEquals(2, parser.parsed());
+    assertNotSame(first.get(0), first.get(1));
+
+    List<Stmt> second = parser.parse(source);
+    assertEquals(2, parser.reused());
+    assertSame(first.get(0), second.get(0));
+    assertSame(first.get(1), second.get(1));
+    assertEquals("1\n1\n", TestUtils.interpret(interpreter, second).output);
+  }
+
+  @Test
+  public void testSyntaxErrorRecovery() {
+    Interpreter interpreter = new Interpreter();
+    IncrementalParser parser = new IncrementalParser(interpreter);
+    String broken = SOURCE.replace("var x = add(1, 2);", "var x = ;");
+
+    List<String> errors = parse(parser, broken);
+    assertFalse(errors.isEmpty());
+    assertTrue(parser.hadError());
+
+    // Chunk with errors is not cached and reports errors again
+    errors = parse(parser, broken);
+    assertFalse(errors.isEmpty());
+    assertTrue(parser.hadError());
+    assertEquals(2, parser.reused());
+
+    errors = parse(parser, SOURCE);
+    assertTrue(errors.isEmpty());
+    assertFalse(parser.hadError());
+    assertEquals(2, parser.reused());
+  }
+
+  @Test
+  public void testResolutionErrorRecovery() {
+    Interpreter interpreter = new Interpreter();
+    IncrementalParser parser = new IncrementalParser(interpreter);
+    String broken = SOURCE + "return 1;\n";
+
+    List<String> errors = parse(parser, broken);
+    assertEquals(1, errors.size());
+    assertTrue(errors.get(0), errors.get(0).contains("Cannot return from top-level code"));
+    assertTrue(parser.hadError());
+
+    errors = parse(parser, broken);
+    assertEquals(1, errors.size());
+    assertEquals(1, parser.parsed());
+    assertEquals(3, parser.reused());
+
+    errors = parse(parser, SOURCE);
+    assertTrue(errors.isEmpty());
+    assertFalse(parser.hadError());
+    assertEquals(3, parser.reused());
+  }
+}
@@ -0,0 +1,160 @@
+package com.github.sadikovi;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class JavaFunctionTest {
+  public static long add(int a, long b) {
+    return a + b;
+  }
+
+  public static String repeat(String value, double count, boolean upper) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      sb.append(upper ? value.toUpperCase() : value);
+    }
+    return sb.toString();
+  }
+
+  public static double sum4(double a, double b, double c, double d) {
+    return a + b + c + d;
+  }
+
+  public static void nothing() { }
+
+  public static Object integer() {
+    return 42;
+  }
+
+  public static Object character() {
+    return 'c';
+  }
+
+  public static Object list() {
+    return Arrays.asList(1, 2);
+  }
+
+  public static Object array() {
+    return new LoxArray();
+  }
+
+  public static Object identity(Object value) {
+    return value;
+  }
+
+  public static double explode() {
+    throw new IllegalStateException("boom");
+  }
+
+  public static List<Object> unsupported() {
+    return null;
+  }
+
+  public static void overloaded(double a) { }
+
+  public static void overloaded(String a) { }
+
+  private static TestUtils.Result run(String source) {
+    Interpreter interpreter = new Interpreter();
+    for (String name : new String[] { "add", "repeat", "sum4", "nothing", "integer", "character",
+        "list", "array", "identity", "explode" }) {
+      interpreter.defineNative(name, JavaFunctionTest.class, name);
+    }
+    return TestUtils.run(interpreter, source);
+  }
+
+  private static String output(String source) {
+    TestUtils.Result result = run(source);
+    assertTrue(result.errors.toString(), result.errors.isEmpty());
+    return result.output;
+  }
+
+  private static String error(String source) {
+    TestUtils.Result result = run(source);
+    assertEquals(result.errors.toString(), 1, result.errors.size());
+    return result.errors.get(0);
+  }
+
+  @Test
+  public void testConversions() {
+    assertEquals("3\ntrue\nabab\nABAB\n10\nnil\n", output(
+      "print add(1, 2);\n" +
+      "print add(-2147483648, -2147483648) == -4294967296;\n" +
+      "print repeat(\"ab\", 2, false);\n" +
+      "print repeat(\"ab\", 2, true);\n" +
+      "print sum4(1, 2, 3, 4);\n" +
+      "print nothing();\n"));
+  }
+
+  @Test
+  public void testArgumentErrors() {
+    assertTrue(error("add(\"1\", 2);").contains("Expected a number"));
+    assertTrue(error("repeat(1, 2, true);").contains("Expected a string"));
+    assertTrue(error("repeat(\"a\", 2, nil);").contains("Expected a boolean"));
+    assertTrue(error("add(1);").contains("Expected 2 arguments, got 1"));
+  }
+
+  @Test
+  public void testInexactIntegerArguments() {
+    assertTrue(error("add(1.5, 1);").contains("Expected an integer in int range"));
+    assertTrue(error("add(2147483648, 1);").contains("Expected an integer in int range"));
+    assertTrue(error("add(1, 0.5);").contains("Expected an integer in long range"));
+    String error = error("add(1, 100000000000000000000);");
+    assertTrue(error, error.contains("Expected an integer in long range"));
+    assertTrue(error("add(1, 9223372036854775808);").contains("Expected an integer in long range"));
+    assertEquals("true\n", output("print add(0, -9223372036854775808) == -9223372036854775808;"));
+  }
+
+  @Test
+  public void testObjectReturnValues() {
+    assertEquals("42\ntrue\nc\n[]\nnil\ntrue\n", output(
+      "print integer();\n" +
+      "print integer() == 42;\n" +
+      "print character();\n" +
+      "print array();\n" +
+      "print identity(nil);\n" +
+      "print identity(identity) == identity;\n"));
+  }
+
+  @Test
+  public void testUnsupportedReturnValue() {
+    String error = error("print list();");
+    assertTrue(error, error.contains(
+      "Native function 'list' returned unsupported value of type java.util.Arrays$ArrayList"));
+  }
+
+  @Test
+  public void testJavaException() {
+    String error = error("explode();");
+    assertTrue(error, error.contains("Native function 'explode' failed"));
+    assertTrue(error, error.contains("boom"));
+  }
+
+  @Test
+  public void testUnsupportedSignatures() throws ReflectiveOperationException {
+    try {
+      JavaFunction.ofStatic("unsupported", JavaFunctionTest.class, "unsupported");
+      fail("Expected unsupported return type");
+    } catch (IllegalArgumentException err) {
+      assertTrue(err.getMessage(), err.getMessage().contains("Return type java.util.List"));
+    }
+    try {
+      JavaFunction.ofStatic("overloaded", JavaFunctionTest.class, "overloaded");
+      fail("Expected overloaded method");
+    } catch (IllegalArgumentException err) {
+      assertTrue(err.getMessage(), err.getMessage().contains("is overloaded"));
+    }
+    try {
+      JavaFunction.of("format", MethodHandles.lookup().findStatic(String.class, "format",
+        MethodType.methodType(String.class, String.class, Object[].class)));
+      fail("Expected variable arity method");
+    } catch (IllegalArgumentException err) {
+      assertTrue(err.getMessage(), err.getMessage().contains("Variable arity"));
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package com.github.sadikovi;
+
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LazyBodyTest {
+  /** Parses source with lazy function bodies and resolves it, errors are collected */
+  private static List<Stmt> parse(Interpreter interpreter, String source) {
+    List<Stmt> statements;
+    Lox.deferErrors();
+    try {
+      statements = new Parser(new Scanner(source).scanTokens(), true).parse();
+      new Resolver(interpreter).resolve(statements);
+    } finally {
+      assertEquals(0, Lox.collectErrors().size());
+    }
+    return statements;
+  }
+
+  @Test
+  public void testLoadOnCall() {
+    Interpreter interpreter = new Interpreter();
+    List<Stmt> statements = parse(interpreter,
+      "fun add(a, b) { return a + b; }\n" +
+      "fun unused() { this is not parsed }\n" +
+      "print add(1, 2);\n");
+    TestUtils.Result result = TestUtils.interpret(interpreter, statements);
+    assertEquals("3\n", result.output);
+    assertTrue(result.errors.toString(), result.errors.isEmpty());
+  }
+
+  @Test
+  public void testSyntaxErrorIsReportedOnce() {
+    Interpreter interpreter = new Interpreter();
+    List<Stmt> statements = parse(interpreter,
+      "fun f() { var = 1; }\n" +
+      "f();\n");
+
+    TestUtils.Result result = TestUtils.interpret(interpreter, statements);
+    assertEquals(2, result.errors.size());
+    assertTrue(result.errors.get(0), result.errors.get(0).contains("Expected variable name"));
+    assertTrue(result.errors.get(1), result.errors.get(1).contains("Function 'f' has errors"));
+
+    // Failed body is not parsed again
+    result = TestUtils.interpret(interpreter, statements);
+    assertEquals(1, result.errors.size());
+    assertTrue(result.errors.get(0), result.errors.get(0).contains("Function 'f' has errors"));
+  }
+
+  @Test
+  public void testResolutionErrorIsReportedOnce() {
+    Interpreter interpreter = new Interpreter();
+    List<Stmt> statements = parse(interpreter,
+      "fun f() { var a = 1; { var a = a; print a; } return a; }\n" +
+      "print f();\n");
+
+    TestUtils.Result result = TestUtils.interpret(interpreter, statements);
+    assertEquals("", result.output);
+    assertEquals(2, result.errors.size());
+    assertTrue(result.errors.get(0),
+      result.errors.get(0).contains("Cannot read local variable in its own initializer"));
+    assertTrue(result.errors.get(1), result.errors.get(1).contains("Function 'f' has errors"));
+
+    result = TestUtils.interpret(interpreter, statements);
+    assertEquals(1, result.errors.size());
+    assertTrue(result.errors.get(0), result.errors.get(0).contains("Function 'f' has errors"));
+  }
+}
@@ -0,0 +1,72 @@
+package com.github.sadikovi;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LoxArrayTest {
+  private static String output(String source) {
+    TestUtils.Result result = TestUtils.run(source);
+    assertTrue(result.errors.toString(), result.errors.isEmpty());
+    return result.output;
+  }
+
+  private static String error(String source) {
+    TestUtils.Result result = TestUtils.run(source);
+    assertEquals(result.errors.toString(), 1, result.errors.size());
+    return result.errors.get(0);
+  }
+
+  @Test
+  public void testNumbers() {
+    LoxArray array = new LoxArray();
+    for (int i = 0; i < 20; i++) {
+      array.push((double) i);
+    }
+    array.set(3, 30.0);
+    assertEquals(20, array.size());
+    assertEquals(30.0, array.get(3));
+    assertEquals(19.0, array.pop());
+    assertEquals(19, array.size());
+  }
+
+  @Test
+  public void testSwitchToObjects() {
+    LoxArray array = new LoxArray();
+    array.push(1.0);
+    array.push(2.0);
+    array.set(1, "b");
+    array.push(null);
+    assertEquals("[1, b, nil]", array.toString());
+    assertNull(array.pop());
+    assertEquals("b", array.pop());
+    assertEquals(1.0, array.pop());
+  }
+
+  @Test
+  public void testMethods() {
+    assertEquals("3\n2\n[1, 5]\n5\n1\n", output(
+      "var a = Array();\n" +
+      "a.push(1);\n" +
+      "a.push(2);\n" +
+      "print a.get(0) + a.get(1);\n" +
+      "print a.length;\n" +
+      "a.set(1, 5);\n" +
+      "print a;\n" +
+      "print a.pop();\n" +
+      "print a.length;\n"));
+  }
+
+  @Test
+  public void testBoundMethodIsCached() {
+    assertEquals("true\n", output("var a = Array(); print a.push == a.push;"));
+  }
+
+  @Test
+  public void testErrors() {
+    assertTrue(error("Array().pop();").contains("Cannot pop from an empty array"));
+    assertTrue(error("Array().get(0);").contains("Index 0 is out of bounds"));
+    assertTrue(error("var a = Array(); a.push(1); a.get(0.5);").contains("out of bounds"));
+    assertTrue(error("var a = Array(); a.push(1); a.get(\"0\");").contains("Index must be a number"));
+    assertTrue(error("Array().size;").contains("Undefined property 'size'"));
+  }
+}
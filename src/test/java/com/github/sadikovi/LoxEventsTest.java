@@ -0,0 +1,83 @@
+package com.github.sadikovi;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LoxEventsTest {
+  private static final String[] EVENTS = {
+    "com.github.sadikovi.Call", "com.github.sadikovi.Instantiation",
+    "com.github.sadikovi.RuntimeError", "com.github.sadikovi.Phase"
+  };
+
+  /** Returns Lox events of the current thread recorded while running the source */
+  private static List<RecordedEvent> record(String source) throws IOException {
+    Path path = Files.createTempFile("lox", ".jfr");
+    try (Recording recording = new Recording()) {
+      for (String name : EVENTS) {
+        recording.enable(name).withThreshold(Duration.ZERO);
+      }
+      recording.start();
+      Stats stats = new Stats(false);
+      stats.start();
+      TestUtils.run(source);
+      stats.stop(Stats.Phase.EVAL);
+      recording.stop();
+      recording.dump(path);
+
+      List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+      String thread = Thread.currentThread().getName();
+      for (RecordedEvent event : RecordingFile.readAllEvents(path)) {
+        if (event.getThread() != null && thread.equals(event.getThread().getJavaName())) {
+          events.add(event);
+        }
+      }
+      return events;
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  private static RecordedEvent find(List<RecordedEvent> events, String name) {
+    for (RecordedEvent event : events) {
+      if (event.getEventType().getName().equals(name)) return event;
+    }
+    fail("No " + name + " event in " + events);
+    return null;
+  }
+
+  @Test
+  public void testEvents() throws IOException {
+    List<RecordedEvent> events = record(
+      "class A { init() { } }\n" +
+      "fun f() { return A(); }\n" +
+      "f();\n" +
+      "nil + 1;\n");
+
+    List<String> calls = new ArrayList<String>();
+    for (RecordedEvent event : events) {
+      if (event.getEventType().getName().equals("com.github.sadikovi.Call")) {
+        calls.add(event.getString("function"));
+        assertTrue(event.getInt("line") > 0);
+      }
+    }
+    assertTrue(calls.toString(), calls.contains("f") && calls.contains("init"));
+
+    assertEquals("A", find(events, "com.github.sadikovi.Instantiation").getString("className"));
+
+    RecordedEvent error = find(events, "com.github.sadikovi.RuntimeError");
+    assertEquals("Both operands must be numbers or strings", error.getString("message"));
+    assertEquals(4, error.getInt("line"));
+
+    assertEquals("eval", find(events, "com.github.sadikovi.Phase").getString("phase"));
+  }
+}
@@ -0,0 +1,79 @@
+package com.github.sadikovi;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LoxMapTest {
+  private static String output(String source) {
+    TestUtils.Result result = TestUtils.run(source);
+    assertTrue(result.errors.toString(), result.errors.isEmpty());
+    return result.output;
+  }
+
+  private static String error(String source) {
+    TestUtils.Result result = TestUtils.run(source);
+    assertEquals(result.errors.toString(), 1, result.errors.size());
+    return result.errors.get(0);
+  }
+
+  @Test
+  public void testMatchesHashMap() {
+    LoxMap map = new LoxMap();
+    Map<Object, Object> expected = new HashMap<Object, Object>();
+    Random random = new Random(42);
+    for (int i = 0; i < 10000; i++) {
+      Object key = (i % 2 == 0) ? (Object) (double) random.nextInt(500) : "k" + random.nextInt(500);
+      if (random.nextInt(3) == 0) {
+        assertEquals(expected.remove(key) != null, map.delete(key));
+      } else {
+        assertEquals(!expected.containsKey(key), map.set(key, (double) i));
+        expected.put(key, (double) i);
+      }
+      assertEquals(expected.size(), map.size());
+    }
+    for (Map.Entry<Object, Object> entry : expected.entrySet()) {
+      assertTrue(map.has(entry.getKey()));
+      assertEquals(entry.getValue(), map.get(entry.getKey()));
+    }
+    assertFalse(map.has("missing"));
+    assertNull(map.get("missing"));
+  }
+
+  @Test
+  public void testKeysByValueAndIdentity() {
+    assertEquals("1\n2\nnil\n2\n", output(
+      "class A { }\n" +
+      "var a = A();\n" +
+      "var m = Map();\n" +
+      "m.set(\"a\" + \"b\", 1);\n" +
+      "m.set(a, 2);\n" +
+      "print m.get(\"ab\");\n" +
+      "print m.get(a);\n" +
+      "print m.get(A());\n" +
+      "print m.size;\n"));
+  }
+
+  @Test
+  public void testMethods() {
+    assertEquals("true\nfalse\n[x]\nx=2\n{x: 2}\n", output(
+      "var m = Map();\n" +
+      "m.set(\"x\", 1);\n" +
+      "m.set(\"y\", 1);\n" +
+      "m.set(\"x\", 2);\n" +
+      "print m.delete(\"y\");\n" +
+      "print m.has(\"y\");\n" +
+      "print m.keys();\n" +
+      "m.forEach(fun (key, value) { print key + \"=\" + value; });\n" +
+      "print m;\n"));
+  }
+
+  @Test
+  public void testErrors() {
+    assertTrue(error("Map().set(nil, 1);").contains("Map key cannot be nil"));
+    assertTrue(error("Map().forEach(1);").contains("Expected a function with key and value"));
+  }
+}
@@ -0,0 +1,38 @@
+package com.github.sadikovi;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LoxStringBuilderTest {
+  private static String output(String source) {
+    TestUtils.Result result = TestUtils.run(source);
+    assertTrue(result.errors.toString(), result.errors.isEmpty());
+    return result.output;
+  }
+
+  @Test
+  public void testFormatLikePrint() {
+    LoxStringBuilder sb = new LoxStringBuilder();
+    Object[] values = { "s", 1.0, -0.0, 2.5, 1e7, -12.0, true, null };
+    StringBuilder expected = new StringBuilder();
+    for (Object value : values) {
+      sb.append(value);
+      expected.append(Interpreter.stringify(value));
+    }
+    assertEquals(expected.toString(), sb.toString());
+    assertEquals("s1-02.51.0E7-12truenil", sb.toString());
+  }
+
+  @Test
+  public void testMethods() {
+    assertEquals("line 1 true\n11\n0\nab\n", output(
+      "var sb = StringBuilder();\n" +
+      "sb.append(\"line \").append(1).append(\" \").append(true);\n" +
+      "print sb.toString();\n" +
+      "print sb.length;\n" +
+      "sb.clear();\n" +
+      "print sb.length;\n" +
+      "for (var c = 0; c < 2; c = c + 1) { if (c == 0) sb.append(\"a\"); else sb.append(\"b\"); }\n" +
+      "print sb;\n"));
+  }
+}
@@ -0,0 +1,132 @@
+package com.github.sadikovi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Runs the command line interpreter in a separate JVM and checks its exit status */
+public class LoxTest {
+  private Path root;
+
+  /** Exit status and error output of a run */
+  private static class Result {
+    final int status;
+    final String err;
+
+    Result(int status, String err) {
+      this.status = status;
+      this.err = err;
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("lox");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    for (File file : root.toFile().listFiles()) {
+      Files.delete(file.toPath());
+    }
+    Files.delete(root);
+  }
+
+  private Path write(String name, byte[] bytes) throws IOException {
+    return Files.write(root.resolve(name), bytes);
+  }
+
+  private Path write(String name, String source) throws IOException {
+    return write(name, source.getBytes(AstFormat.UTF8));
+  }
+
+  /** Runs `jlox` with JVM options followed by `--` and interpreter arguments */
+  private Result run(String... args) throws IOException, InterruptedException {
+    List<String> command = new ArrayList<String>();
+    command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    int split = Arrays.asList(args).indexOf("--");
+    command.addAll(Arrays.asList(args).subList(0, Math.max(split, 0)));
+    command.add(Lox.class.getName());
+    command.addAll(Arrays.asList(args).subList(split + 1, args.length));
+
+    Process process = new ProcessBuilder(command).directory(root.toFile())
+      .redirectOutput(root.resolve("out.txt").toFile()).start();
+    process.getOutputStream().close();
+    String err = read(process.getErrorStream());
+    return new Result(process.waitFor(), err);
+  }
+
+  private static String read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] bytes = new byte[4096];
+    for (int count = in.read(bytes); count >= 0; count = in.read(bytes)) {
+      out.write(bytes, 0, count);
+    }
+    return out.toString("UTF-8");
+  }
+
+  @Test
+  public void testExitStatus() throws Exception {
+    assertEquals(0, run(write("ok.lox", "print 1;").toString()).status);
+    assertEquals(64, run(write("syntax.lox", "print ;").toString()).status);
+    assertEquals(70, run(write("runtime.lox", "print nil + 1;").toString()).status);
+  }
+
+  @Test
+  public void testTruncatedCompiledFile() throws Exception {
+    Interpreter interpreter = new Interpreter();
+    List<Stmt> statements = TestUtils.parse("var a = 1; print a;");
+    new Resolver(interpreter).resolve(statements);
+    byte[] bytes = new AstWriter(interpreter).write(statements);
+    Path path = write("truncated.loxc", Arrays.copyOf(bytes, bytes.length - 2));
+    Result result = run(path.toString());
+    assertEquals(65, result.status);
+    assertEquals("Cannot read " + path + ": Truncated file", result.err.trim());
+  }
+
+  @Test
+  public void testInvalidPrelude() throws Exception {
+    Interpreter interpreter = new Interpreter();
+    assertTrue(TestUtils.run(interpreter, "var a = 1;").errors.isEmpty());
+    byte[] image = Snapshot.write(interpreter);
+    Path prelude = write("prelude.loxi", Arrays.copyOf(image, image.length - 1));
+    Path path = write("main.lox", "print a;");
+    Result result = run("--prelude", prelude.toString(), path.toString());
+    assertEquals(65, result.status);
+    assertEquals("Cannot read " + prelude + ": Truncated image", result.err.trim());
+
+    Files.write(prelude, image);
+    assertEquals(0, run("--prelude", prelude.toString(), path.toString()).status);
+  }
+
+  @Test
+  public void testSnapshotOfLazyBodyWithErrors() throws Exception {
+    Path path = write("lazy.lox", "fun f() { print ; }");
+    Result result = run("--lazy", "--snapshot", path.toString());
+    assertEquals(64, result.status);
+    assertTrue(result.err, result.err.contains("Expected expression"));
+    assertTrue(result.err, result.err.contains("Function 'f' has errors"));
+  }
+
+  @Test
+  public void testUncaughtErrorExitStatus() throws Exception {
+    // Error escapes the interpreter on the "lox-main" thread
+    Path path = write("oom.lox", "var s = \"ab\"; while (true) s = s + s;");
+    Result result = run("-Xmx32m", "--", path.toString());
+    assertEquals(70, result.status);
+    assertTrue(result.err, result.err.contains("OutOfMemoryError"));
+  }
+}
@@ -0,0 +1,59 @@
+package com.github.sadikovi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Counters are shared with other tests, so only lower bounds of increments are checked
+public class MetricsTest {
+  @Test
+  public void testCounters() {
+    long calls = Metrics.calls;
+    long instances = Metrics.instances;
+    long lookups = Metrics.methodLookups;
+    long concatenations = Metrics.stringConcatenations;
+    long exceptions = Metrics.controlFlowExceptions;
+
+    TestUtils.Result result = TestUtils.run(
+      "class A { get() { return \"a\"; } }\n" +
+      "var a = A();\n" +
+      "var s = \"\";\n" +
+      "for (var i = 0; i < 3; i = i + 1) { s = s + a.get(); }\n" +
+      "while (true) { break; }\n" +
+      "print s;\n");
+    assertEquals("aaa\n", result.output);
+
+    assertTrue(Metrics.calls - calls >= 3);
+    assertTrue(Metrics.instances - instances >= 1);
+    assertTrue(Metrics.methodLookups - lookups >= 3);
+    assertTrue(Metrics.stringConcatenations - concatenations >= 3);
+    assertTrue(Metrics.controlFlowExceptions - exceptions >= 4);
+  }
+
+  @Test
+  public void testPrometheusFormat() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Metrics.writePrometheus(new PrintStream(bytes, true));
+    String output = bytes.toString();
+    assertTrue(output, output.contains(
+      "# HELP lox_calls_total Lox function calls\n# TYPE lox_calls_total counter\n"));
+    for (String line : output.split("\n")) {
+      assertTrue(line, line.startsWith("# ") || line.matches("lox_[a-z_]+_total \\d+"));
+    }
+  }
+
+  @Test
+  public void testMXBean() throws Exception {
+    Metrics.register();
+    Metrics.register();
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+    assertTrue(server.isRegistered(name));
+    assertTrue((Long) server.getAttribute(name, "Calls") >= 0);
+  }
+}
@@ -0,0 +1,46 @@
+package com.github.sadikovi;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NativesTest {
+  private static String output(String source) {
+    TestUtils.Result result = TestUtils.run(source);
+    assertTrue(result.errors.toString(), result.errors.isEmpty());
+    return result.output;
+  }
+
+  private static String error(String source) {
+    TestUtils.Result result = TestUtils.run(source);
+    assertEquals(result.errors.toString(), 1, result.errors.size());
+    return result.errors.get(0);
+  }
+
+  @Test
+  public void testNanoClock() {
+    assertEquals("true\n", output(
+      "var start = nanoClock();\n" +
+      "var end = nanoClock();\n" +
+      "print end >= start;\n"));
+  }
+
+  @Test
+  public void testBench() {
+    assertEquals("5\n5\ntrue\ntrue\ntrue\n", output(
+      "var calls = 0;\n" +
+      "var stats = bench(fun () { calls = calls + 1; }, 5);\n" +
+      "print stats.iterations;\n" +
+      // one warmup call
+      "print calls - 1;\n" +
+      "print stats.min <= stats.median and stats.median <= stats.max;\n" +
+      "print stats.mean > 0;\n" +
+      "print stats.stddev >= 0;\n"));
+  }
+
+  @Test
+  public void testBenchArguments() {
+    assertTrue(error("bench(fun (a) { print a; }, 5);").contains("Expected a function without parameters"));
+    assertTrue(error("bench(fun () { }, 0);").contains("Expected a positive integer number"));
+    assertTrue(error("bench(fun () { }, 1.5);").contains("Expected a positive integer number"));
+  }
+}
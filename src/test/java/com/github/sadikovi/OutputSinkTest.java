@@ -0,0 +1,82 @@
+package com.github.sadikovi;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class OutputSinkTest {
+  private static final String SMILE = "\ud83d\ude00";
+
+  private static String repeat(char c, int count) {
+    char[] chars = new char[count];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+
+  /** Prints values into a file channel sink and returns the decoded file */
+  private static String printToChannel(Object... values) throws IOException {
+    Path path = Files.createTempFile("output", ".txt");
+    try {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+        OutputSink sink = OutputSink.of(channel, AstFormat.UTF8);
+        for (Object value : values) {
+          sink.print(value);
+          sink.flush();
+        }
+        sink.close();
+      }
+      return new String(Files.readAllBytes(path), AstFormat.UTF8);
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  @Test
+  public void testFormatValues() {
+    StringWriter out = new StringWriter();
+    OutputSink sink = OutputSink.of(out);
+    sink.println(null);
+    sink.println(3.0);
+    sink.println(-0.0);
+    sink.println(2.5);
+    sink.println(1e7);
+    sink.println(-1234567.0);
+    sink.println(true);
+    sink.flush();
+    assertEquals("nil\n3\n-0\n2.5\n1.0E7\n-1234567\ntrue\n", out.toString());
+  }
+
+  @Test
+  public void testLongStrings() {
+    StringWriter out = new StringWriter();
+    OutputSink sink = OutputSink.of(out);
+    String value = repeat('x', OutputSink.BUFFER_SIZE * 2 + 3);
+    sink.print(value);
+    sink.flush();
+    assertEquals(value, out.toString());
+  }
+
+  @Test
+  public void testSurrogatePairAcrossBuffers() throws IOException {
+    // High surrogate is the last character of the first buffer
+    String value = repeat('a', OutputSink.BUFFER_SIZE - 1) + SMILE + "b";
+    assertEquals(value, printToChannel(value));
+  }
+
+  @Test
+  public void testSurrogatePairAcrossFlushes() throws IOException {
+    assertEquals("a" + SMILE + "b", printToChannel("a\ud83d", "\ude00b"));
+  }
+
+  @Test
+  public void testUnpairedSurrogateOnClose() throws IOException {
+    assertEquals("a?", printToChannel("a\ud83d"));
+  }
+}
@@ -0,0 +1,87 @@
+package com.github.sadikovi;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ParallelParserTest {
+  /** Returns source of several batches, `broken` declarations have syntax errors */
+  private static String source(int declarations, int broken) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < declarations; i++) {
+      if (broken > 0 && i % (declarations / broken) == declarations / broken / 2) {
+        sb.append("var v").append(i).append(" = ;\n");
+      } else if (i % 3 == 0) {
+        sb.append("fun f").append(i).append("(a) {\n  if (a > 1) { return a; } else { return -a; }\n}\n");
+      } else {
+        sb.append("var v").append(i).append(" = \"}{\" + \"").append(i).append("\"; // };\n");
+      }
+    }
+    return sb.toString();
+  }
+
+  /** Parses source with errors collected, returns printed statements followed by errors */
+  private static String parse(String source, boolean parallel) {
+    List<Stmt> statements;
+    List<String> errors;
+    ForkJoinPool pool = new ForkJoinPool(4);
+    Lox.deferErrors();
+    try {
+      statements = parallel ? new ParallelParser(pool).parse(source) : TestUtils.parse(source);
+    } finally {
+      errors = Lox.collectErrors();
+      pool.shutdown();
+    }
+    // Declarations with syntax errors are parsed into nulls
+    StringBuilder sb = new StringBuilder();
+    for (Stmt statement : statements) {
+      sb.append(statement == null ? "null" : statement.accept(new AstPrinter())).append('\n');
+    }
+    return sb.append(errors).toString();
+  }
+
+  @Test
+  public void testMatchesSequentialParser() {
+    String source = source(20000, 0);
+    assertTrue(source.length() > 8 * 64 * 1024);
+    assertEquals(parse(source, false), parse(source, true));
+  }
+
+  @Test
+  public void testErrorsInSourceOrder() {
+    String source = source(20000, 10);
+    String sequential = parse(source, false);
+    assertTrue(sequential, sequential.contains("[line "));
+    assertEquals(sequential, parse(source, true));
+  }
+
+  @Test
+  public void testCommonPoolKeepsCallerErrors() {
+    // Tasks of the common pool can run inline on the caller thread while it defers errors
+    String source = source(2000, 10);
+    String sequential = parse(source, false);
+    for (int i = 0; i < 10; i++) {
+      List<String> errors;
+      Lox.deferErrors();
+      try {
+        Lox.error(0, "Before");
+        new ParallelParser().parse(source);
+        Lox.error(0, "After");
+      } finally {
+        errors = Lox.collectErrors();
+      }
+      assertEquals("[line 0] Error: Before", errors.get(0));
+      assertEquals("[line 0] Error: After", errors.get(errors.size() - 1));
+      assertEquals(sequential.substring(sequential.lastIndexOf("\n[") + 1),
+        errors.subList(1, errors.size() - 1).toString());
+    }
+  }
+
+  @Test
+  public void testSmallSource() {
+    String source = "var a = 1;\nprint a;\n";
+    assertEquals(parse(source, false), parse(source, true));
+  }
+}
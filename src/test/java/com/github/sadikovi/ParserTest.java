@@ -0,0 +1,66 @@
+package com.github.sadikovi;
+
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ParserTest {
+  /** Returns printed expression of a single expression statement */
+  private static String expression(String source) {
+    Lox.deferErrors();
+    try {
+      List<Stmt> statements = TestUtils.parse(source);
+      assertEquals(1, statements.size());
+      return ((Stmt.Expression) statements.get(0)).expression.accept(new AstPrinter());
+    } finally {
+      assertTrue(Lox.collectErrors().isEmpty());
+    }
+  }
+
+  private static String eval(String source) {
+    TestUtils.Result result = TestUtils.run(source);
+    assertTrue(result.errors.toString(), result.errors.isEmpty());
+    return result.output;
+  }
+
+  @Test
+  public void testArithmeticPrecedence() {
+    assertEquals("(- (+ 1.0 (* 2.0 3.0)) (/ 4.0 5.0))", expression("1 + 2 * 3 - 4 / 5;"));
+    assertEquals("(- (- 1.0 2.0) 3.0)", expression("1 - 2 - 3;"));
+    assertEquals("(* (group (+ 1.0 2.0)) (- 3.0))", expression("(1 + 2) * -3;"));
+  }
+
+  @Test
+  public void testComparisonPrecedence() {
+    assertEquals("(!= (> 1.0 2.0) (<= 3.0 4.0))", expression("1 > 2 != 3 <= 4;"));
+    assertEquals("(== (< 1.0 (+ 2.0 3.0)) true)", expression("1 < 2 + 3 == true;"));
+  }
+
+  @Test
+  public void testLogicalPrecedence() {
+    // "and" binds tighter than "or"
+    assertEquals("true\n", eval("print true or false and false;"));
+    assertEquals("false\n", eval("print (true or false) and false;"));
+    assertEquals("true\n", eval("print !false == true;"));
+  }
+
+  @Test
+  public void testAssignmentIsRightAssociative() {
+    assertEquals("3\n3\n", eval("var a; var b; a = b = 3; print a; print b;"));
+    assertEquals("2\n", eval("class A {} var a = A(); a.x = 1; a.x = a.x + 1; print a.x;"));
+  }
+
+  @Test
+  public void testCallsAndProperties() {
+    assertEquals("-3\n",
+      eval("class A { f() { return fun (x) { return x; }; } } print -A().f()(3);"));
+  }
+
+  @Test
+  public void testInvalidAssignmentTarget() {
+    TestUtils.Result result = TestUtils.run("1 + 2 = 3;");
+    assertEquals(1, result.errors.size());
+    assertTrue(result.errors.get(0), result.errors.get(0).contains("Invalid assignment target"));
+  }
+}
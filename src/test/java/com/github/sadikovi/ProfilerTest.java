@@ -0,0 +1,69 @@
+package com.github.sadikovi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ProfilerTest {
+  @Test
+  public void testCallStackTrace() {
+    CallStack stack = new CallStack();
+    stack.line = 1;
+    stack.push("main");
+    stack.line = 2;
+    stack.push("fib");
+    stack.line = 3;
+    assertEquals(2, stack.depth());
+    assertEquals("  at fib [line 3]\n  at main [line 2]\n  at <script> [line 1]", stack.trace(10));
+
+    stack.pop();
+    assertEquals(1, stack.depth());
+    assertEquals(2, stack.line);
+  }
+
+  @Test
+  public void testCallStackTraceLimit() {
+    CallStack stack = new CallStack();
+    for (int i = 0; i < 100; i++) {
+      stack.push("f" + i);
+    }
+    String trace = stack.trace(2);
+    assertTrue(trace, trace.startsWith("  at f99 [line 0]\n  at f98 [line 0]\n  ... 96 more\n"));
+    assertTrue(trace, trace.endsWith("  at f0 [line 0]\n  at <script> [line 0]"));
+  }
+
+  @Test
+  public void testSamples() throws IOException, InterruptedException {
+    CallStack stack = new CallStack();
+    stack.push("main");
+    stack.push("fib");
+    stack.line = 7;
+
+    Profiler profiler = new Profiler(stack, 100000L);
+    profiler.start();
+    Thread.sleep(50);
+    profiler.stop();
+
+    StringWriter collapsed = new StringWriter();
+    profiler.writeCollapsed(collapsed);
+    assertTrue(collapsed.toString(), collapsed.toString().matches("<script>;main;fib \\d+\n"));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    profiler.printTop(new PrintStream(bytes, true), 10);
+    String top = bytes.toString();
+    assertTrue(top, top.contains("  100.00   100.00  fib"));
+    assertTrue(top, top.contains("  100.00  fib:7"));
+  }
+
+  @Test
+  public void testNoSamples() {
+    Profiler profiler = new Profiler(new CallStack(), 1000000L);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    profiler.printTop(new PrintStream(bytes, true), 10);
+    assertTrue(bytes.toString().contains("samples: 0"));
+  }
+}
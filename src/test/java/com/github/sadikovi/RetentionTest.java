@@ -0,0 +1,107 @@
+package com.github.sadikovi;
+
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RetentionTest {
+  /** Runs garbage collection until the retention has at most `scripts` scripts */
+  private static void collect(Retention retention, long scripts) throws InterruptedException {
+    for (int i = 0; i < 50 && retention.scripts() > scripts; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+  }
+
+  private static void run(Interpreter interpreter, String source) {
+    TestUtils.Result result = TestUtils.run(interpreter, source);
+    assertTrue(result.errors.toString(), result.errors.isEmpty());
+  }
+
+  @Test
+  public void testResolvedDepths() {
+    List<Stmt> statements = TestUtils.parse("var a = 1; { var b = a; { print b; } }");
+    new Resolver(new Interpreter()).resolve(statements);
+    Stmt.Block outer = (Stmt.Block) statements.get(1);
+    Stmt.Var b = (Stmt.Var) outer.statements.get(0);
+    Stmt.Print print = (Stmt.Print) ((Stmt.Block) outer.statements.get(1)).statements.get(0);
+    assertEquals(-1, b.expression.depth);
+    assertEquals(1, print.expression.depth);
+  }
+
+  @Test
+  public void testStatementsWithoutBodies() {
+    Interpreter interpreter = new Interpreter();
+    Retention retention = interpreter.trackRetention();
+    assertSame(retention, interpreter.trackRetention());
+    run(interpreter, "var a = 1; print a + 1;");
+    assertEquals(0, retention.scripts());
+    assertEquals(0, retention.nodes());
+  }
+
+  @Test
+  public void testReleasedFunctions() throws InterruptedException {
+    Interpreter interpreter = new Interpreter();
+    Retention retention = interpreter.trackRetention();
+    run(interpreter, "fun f() { return 1; }");
+    run(interpreter, "class A { m() { return 2; } }");
+    assertEquals(2, retention.scripts());
+    // return statement and literal in every body
+    assertEquals(4, retention.nodes());
+
+    run(interpreter, "f = nil; A = nil;");
+    collect(retention, 0);
+    assertEquals(0, retention.scripts());
+    assertEquals(0, retention.nodes());
+  }
+
+  @Test
+  public void testNestedClosure() throws InterruptedException {
+    Interpreter interpreter = new Interpreter();
+    Retention retention = interpreter.trackRetention();
+    run(interpreter, "fun outer() { return fun () { return 1; }; }\nvar inner = outer();");
+    assertEquals(1, retention.scripts());
+    long nodes = retention.nodes();
+
+    // Script is retained while the lambda body is reachable
+    run(interpreter, "outer = nil;");
+    for (int i = 0; i < 50 && retention.nodes() == nodes; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertEquals(1, retention.scripts());
+    assertEquals(2, retention.nodes());
+
+    run(interpreter, "inner = nil;");
+    collect(retention, 0);
+    assertEquals(0, retention.scripts());
+  }
+
+  @Test
+  public void testLazyBodiesAreNotParsed() {
+    Interpreter interpreter = new Interpreter();
+    Retention retention = interpreter.trackRetention();
+    List<Stmt> statements = new Parser(new Scanner("fun f() { return 1; }").scanTokens(), true)
+      .parse();
+    new Resolver(interpreter).resolve(statements);
+    TestUtils.Result result = TestUtils.interpret(interpreter, statements);
+    assertTrue(result.errors.toString(), result.errors.isEmpty());
+
+    LazyBody body = (LazyBody) ((Stmt.Function) statements.get(0)).body;
+    assertFalse(body.isLoaded());
+    assertEquals(1, retention.scripts());
+    assertEquals(0, retention.nodes());
+  }
+
+  @Test
+  public void testManySubmissions() throws InterruptedException {
+    Interpreter interpreter = new Interpreter();
+    Retention retention = interpreter.trackRetention();
+    for (int i = 0; i < 2000; i++) {
+      run(interpreter, "fun f(x) { return x + " + i + "; }\nvar y = f(1);");
+    }
+    collect(retention, 1);
+    assertEquals(1, retention.scripts());
+  }
+}
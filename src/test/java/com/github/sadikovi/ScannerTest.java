@@ -0,0 +1,135 @@
+package com.github.sadikovi;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScannerTest {
+  /** Returns tokens of the stream as "TYPE lexeme literal @line" strings */
+  private static List<String> tokens(TokenStream stream) {
+    List<String> tokens = new ArrayList<String>();
+    while (true) {
+      Token token = stream.peek();
+      tokens.add(token + " @" + token.line);
+      if (token.type == TokenType.EOF) return tokens;
+      stream.advance();
+    }
+  }
+
+  /** Returns source larger than the scanner buffer with lexemes that cross buffer boundaries */
+  private static String largeSource() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; sb.length() < 40000; i++) {
+      sb.append("var v").append(i).append(" = \"").append(i % 7 == 0 ? "multi\nline" : "s")
+        .append("\" + ").append(i * 1.25).append("; /* comment\n */ // tail\n");
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testReaderMatchesString() {
+    String source = largeSource();
+    List<String> expected = tokens(new Scanner(source).stream());
+    assertEquals(expected, tokens(new Scanner(new StringReader(source)).stream()));
+  }
+
+  @Test
+  public void testByteBufferReader() {
+    String source = largeSource() + "print \"\u00e9t\u00e9 \u2603\";\n";
+    Charset utf8 = Charset.forName("UTF-8");
+    ByteBuffer bytes = ByteBuffer.wrap(source.getBytes(utf8));
+    List<String> expected = tokens(new Scanner(source).stream());
+    assertEquals(expected, tokens(new Scanner(new ByteBufferReader(bytes, utf8)).stream()));
+  }
+
+  @Test
+  public void testLongLexeme() {
+    StringBuilder sb = new StringBuilder("\"");
+    for (int i = 0; i < 20000; i++) sb.append((char) ('a' + i % 26));
+    String literal = sb.substring(1);
+    sb.append("\";");
+    TokenStream stream = new Scanner(new StringReader(sb.toString())).stream();
+    assertEquals(TokenType.STRING, stream.peekType());
+    assertEquals(literal, stream.peek().literal);
+    stream.advance();
+    assertEquals(TokenType.SEMICOLON, stream.peekType());
+  }
+
+  @Test(timeout = 10000)
+  public void testSurrogatePairAtBufferEnd() {
+    Charset utf8 = Charset.forName("UTF-8");
+    // High surrogate of the string literal is around the end of the 8192 character buffer
+    for (int length = 8188; length <= 8193; length++) {
+      StringBuilder sb = new StringBuilder("\"");
+      for (int i = 1; i < length; i++) sb.append('a');
+      String source = sb.append("\ud83d\ude00\";").toString();
+      String literal = source.substring(1, source.length() - 2);
+
+      ByteBuffer bytes = ByteBuffer.wrap(source.getBytes(utf8));
+      TokenStream stream = new Scanner(new ByteBufferReader(bytes, utf8)).stream();
+      assertEquals(literal, stream.peek().literal);
+      stream.advance();
+      assertEquals(TokenType.SEMICOLON, stream.peekType());
+
+      bytes = ByteBuffer.wrap(source.getBytes(utf8));
+      TokenBuffer tokens = new Scanner(new ByteBufferReader(bytes, utf8)).scanTokens();
+      assertEquals(3, tokens.size());
+      assertEquals(literal, tokens.stream().peek().literal);
+    }
+  }
+
+  @Test
+  public void testTokenBuffer() {
+    String source = largeSource();
+    TokenBuffer buffer = new Scanner(source).scanTokens();
+    List<String> expected = tokens(new Scanner(source).stream());
+    assertEquals(expected.size(), buffer.size());
+    assertEquals(expected, tokens(buffer.stream()));
+    assertEquals(TokenType.EOF, buffer.type(buffer.size() - 1));
+  }
+
+  @Test
+  public void testTokenBufferRange() {
+    TokenBuffer buffer = new Scanner("fun f() {\n  print 1;\n}").scanTokens();
+    // range of the body without braces, the closing brace is treated as EOF
+    TokenBuffer.Cursor cursor = buffer.stream(5, 8);
+    assertEquals(TokenType.PRINT, cursor.peekType());
+    cursor.advance();
+    assertEquals(1.0, cursor.peek().literal);
+    assertEquals(2, cursor.peek().line);
+    cursor.advance();
+    cursor.advance();
+    assertEquals(TokenType.EOF, cursor.peekType());
+    assertEquals(3, cursor.peek().line);
+    cursor.advance();
+    assertEquals(8, cursor.position());
+  }
+
+  @Test
+  public void testKeywords() {
+    String[] keywords = { "and", "break", "class", "else", "false", "for", "fun", "if", "nil",
+      "or", "print", "return", "super", "this", "true", "var", "while" };
+    for (String keyword : keywords) {
+      Token token = new Scanner(keyword).stream().peek();
+      assertEquals(keyword, token.lexeme);
+      assertEquals(keyword, TokenType.valueOf(keyword.toUpperCase()), token.type);
+    }
+  }
+
+  @Test
+  public void testKeywordPrefixesAreIdentifiers() {
+    String[] identifiers = { "a", "an", "andy", "classes", "f", "fa", "fals", "fo", "fore",
+      "funny", "i", "iff", "ni", "o", "ors", "printer", "ret", "sup", "t", "th", "thi", "tru",
+      "v", "va", "whil", "whiles", "_if", "if1", "breaks" };
+    for (String identifier : identifiers) {
+      Token token = new Scanner(identifier).stream().peek();
+      assertEquals(identifier, TokenType.IDENTIFIER, token.type);
+      assertEquals(identifier, token.lexeme);
+    }
+  }
+}
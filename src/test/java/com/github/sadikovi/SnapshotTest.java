@@ -0,0 +1,152 @@
+package com.github.sadikovi;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SnapshotTest {
+  private static final String PRELUDE =
+    "var greeting = \"hi\";\n" +
+    "var uninitialised;\n" +
+    "var time = clock;\n" +
+    "fun counter() {\n" +
+    "  var count = 0;\n" +
+    "  return fun () { count = count + 1; return count; };\n" +
+    "}\n" +
+    "var next = counter();\n" +
+    "next();\n" +
+    "class Animal {\n" +
+    "  init(name) { this.name = name; }\n" +
+    "  speak() { return this.name + \" makes a sound\"; }\n" +
+    "  class create(name) { return Animal(name); }\n" +
+    "}\n" +
+    "class Dog < Animal {\n" +
+    "  speak() { return super.speak() + \": woof\"; }\n" +
+    "}\n" +
+    "var rex = Dog(\"rex\");\n" +
+    "rex.self = rex;\n" +
+    "rex.friend = Animal.create(\"tom\");\n";
+
+  private static final String PROGRAM =
+    "print greeting;\n" +
+    "uninitialised = 1;\n" +
+    "print uninitialised;\n" +
+    "print time == clock;\n" +
+    "print next();\n" +
+    "print next();\n" +
+    "print rex.speak();\n" +
+    "print rex.self == rex;\n" +
+    "print rex.friend.speak();\n" +
+    "print Dog(\"max\").speak();\n";
+
+  private static final String EXPECTED =
+    "hi\n1\ntrue\n2\n3\nrex makes a sound: woof\ntrue\ntom makes a sound\n" +
+    "max makes a sound: woof\n";
+
+  private static byte[] image(String prelude) {
+    Interpreter interpreter = new Interpreter();
+    TestUtils.Result result = TestUtils.run(interpreter, prelude);
+    assertTrue(result.errors.toString(), result.errors.isEmpty());
+    return Snapshot.write(interpreter);
+  }
+
+  @Test
+  public void testRoundTrip() {
+    byte[] image = image(PRELUDE);
+    assertTrue(Snapshot.hasMagic(ByteBuffer.wrap(image)));
+
+    Interpreter interpreter = new Interpreter();
+    Snapshot.read(ByteBuffer.wrap(image), interpreter);
+    TestUtils.Result result = TestUtils.run(interpreter, PROGRAM);
+    assertTrue(result.errors.toString(), result.errors.isEmpty());
+    assertEquals(EXPECTED, result.output);
+
+    // Same output as running the prelude
+    interpreter = new Interpreter();
+    TestUtils.run(interpreter, PRELUDE);
+    assertEquals(EXPECTED, TestUtils.run(interpreter, PROGRAM).output);
+  }
+
+  @Test
+  public void testUninitialisedVariable() {
+    Interpreter interpreter = new Interpreter();
+    Snapshot.read(ByteBuffer.wrap(image("var a;")), interpreter);
+    TestUtils.Result result = TestUtils.run(interpreter, "print a;");
+    assertEquals(1, result.errors.size());
+    assertTrue(result.errors.get(0), result.errors.get(0).contains("is not initialised"));
+  }
+
+  @Test
+  public void testImageIsStable() {
+    assertArrayEquals(image(PRELUDE), image(PRELUDE));
+  }
+
+  @Test
+  public void testNativeInstances() {
+    Interpreter interpreter = new Interpreter();
+    TestUtils.run(interpreter, "var a = Array();");
+    try {
+      Snapshot.write(interpreter);
+      fail("Expected native instance error");
+    } catch (IllegalArgumentException err) {
+      assertTrue(err.getMessage(), err.getMessage().startsWith("Cannot snapshot"));
+    }
+  }
+
+  @Test
+  public void testInvalidImage() {
+    try {
+      Snapshot.read(ByteBuffer.wrap(new byte[] { 'L', 'O', 'X', 'C', 1 }), new Interpreter());
+      fail("Expected format error");
+    } catch (AstReader.FormatError err) {
+      assertEquals("Not a Lox image", err.getMessage());
+    }
+
+    byte[] image = image("var a = 1;");
+    image[Snapshot.MAGIC.length] = 99;
+    try {
+      Snapshot.read(ByteBuffer.wrap(image), new Interpreter());
+      fail("Expected format error");
+    } catch (AstReader.FormatError err) {
+      assertEquals("Unsupported image version 99", err.getMessage());
+    }
+  }
+
+  @Test
+  public void testTruncatedImage() {
+    byte[] image = image(PRELUDE);
+    for (int length = Snapshot.MAGIC.length; length < image.length; length++) {
+      try {
+        Snapshot.read(ByteBuffer.wrap(image, 0, length), new Interpreter());
+        fail("Read image truncated to " + length + " bytes");
+      } catch (AstReader.FormatError err) {
+        // expected
+      }
+    }
+    try {
+      Snapshot.read(ByteBuffer.wrap(image, 0, image.length - 1), new Interpreter());
+      fail("Expected format error");
+    } catch (AstReader.FormatError err) {
+      assertEquals("Truncated image", err.getMessage());
+    }
+  }
+
+  @Test
+  public void testInvalidBytes() {
+    // Every corrupted byte either loads some globals or fails with FormatError
+    byte[] image = image(PRELUDE);
+    byte[] values = new byte[] { 0x7F, (byte) 0x80, (byte) 0xFF, 100, 0 };
+    for (int i = Snapshot.MAGIC.length + 1; i < image.length; i++) {
+      for (byte value : values) {
+        byte[] corrupted = image.clone();
+        corrupted[i] = value;
+        try {
+          Snapshot.read(ByteBuffer.wrap(corrupted), new Interpreter());
+        } catch (AstReader.FormatError err) {
+          // expected
+        }
+      }
+    }
+  }
+}
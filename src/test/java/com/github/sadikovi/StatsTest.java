@@ -0,0 +1,52 @@
+package com.github.sadikovi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class StatsTest {
+  private static String print(Stats stats) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    stats.print(new PrintStream(bytes, true));
+    return bytes.toString();
+  }
+
+  @Test
+  public void testNodeCounter() {
+    Stats.NodeCounter counter = new Stats.NodeCounter();
+    // print, binary and two literals
+    counter.count(TestUtils.parse("print 1 + 2;"));
+    assertEquals(4, counter.nodes);
+  }
+
+  @Test
+  public void testPrintMeasuredPhases() {
+    Stats stats = new Stats(true);
+    stats.start();
+    stats.stop(Stats.Phase.PARSE);
+    stats.addTokens(5);
+    stats.addNodes(TestUtils.parse("print 1 + 2;"));
+
+    String output = print(stats);
+    assertTrue(output, output.contains("parse"));
+    assertFalse(output, output.contains("resolve"));
+    assertTrue(output, output.contains("tokens: 5, nodes: 4"));
+  }
+
+  @Test
+  public void testPrintUnknownCounts() {
+    Stats stats = new Stats(true);
+    assertTrue(print(stats).contains("tokens: n/a, nodes: n/a"));
+  }
+
+  @Test
+  public void testDisabled() {
+    Stats stats = new Stats(false);
+    stats.start();
+    stats.stop(Stats.Phase.EVAL);
+    stats.addTokens(5);
+    assertEquals("", print(stats));
+  }
+}
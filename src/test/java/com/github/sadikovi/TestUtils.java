@@ -0,0 +1,63 @@
+package com.github.sadikovi;
+
+import java.io.StringWriter;
+import java.util.List;
+
+/**
+ * Helpers to run Lox programs in tests.
+ * Errors are collected instead of printed, see `Lox.deferErrors`.
+ */
+final class TestUtils {
+  private TestUtils() { }
+
+  /** Output of `print` statements and reported errors of a program */
+  static class Result {
+    final String output;
+    final List<String> errors;
+
+    Result(String output, List<String> errors) {
+      this.output = output;
+      this.errors = errors;
+    }
+  }
+
+  /** Parses source, errors are reported through Lox */
+  static List<Stmt> parse(String source) {
+    return new Parser(new Scanner(source).stream()).parse();
+  }
+
+  /** Scans, parses, resolves and runs source in a new interpreter */
+  static Result run(String source) {
+    return run(new Interpreter(), source);
+  }
+
+  /** Scans, parses, resolves and runs source, evaluation is skipped on syntax errors */
+  static Result run(Interpreter interpreter, String source) {
+    StringWriter out = new StringWriter();
+    interpreter.setOutput(OutputSink.of(out));
+    List<String> errors;
+    Lox.deferErrors();
+    try {
+      List<Stmt> statements = parse(source);
+      if (Lox.deferredCount() == 0) new Resolver(interpreter).resolve(statements);
+      if (Lox.deferredCount() == 0) interpreter.interpret(statements, false);
+    } finally {
+      errors = Lox.collectErrors();
+    }
+    return new Result(out.toString(), errors);
+  }
+
+  /** Runs statements that are already resolved and returns output */
+  static Result interpret(Interpreter interpreter, List<Stmt> statements) {
+    StringWriter out = new StringWriter();
+    interpreter.setOutput(OutputSink.of(out));
+    List<String> errors;
+    Lox.deferErrors();
+    try {
+      interpreter.interpret(statements, false);
+    } finally {
+      errors = Lox.collectErrors();
+    }
+    return new Result(out.toString(), errors);
+  }
+}